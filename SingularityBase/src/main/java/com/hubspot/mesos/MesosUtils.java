@@ -2,6 +2,7 @@ package com.hubspot.mesos;
 
 import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
+import java.util.List;
 
 import org.apache.mesos.Protos.MasterInfo;
 import org.apache.mesos.Protos.Offer;
@@ -13,6 +14,7 @@ import org.apache.mesos.Protos.Value.Ranges;
 import org.apache.mesos.Protos.Value.Type;
 
 import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
 import com.google.common.net.InetAddresses;
 
 public class MesosUtils {
@@ -25,8 +27,8 @@ public class MesosUtils {
     return (int) r.getScalar().getValue();
   }
 
-  private static int getScalar(Offer offer, String name) {
-    for (Resource r : offer.getResourcesList()) {
+  private static int getScalar(List<Resource> resources, String name) {
+    for (Resource r : resources) {
       if (r.hasName() && r.getName().equals(name) && r.hasScalar()) {
         return getScalar(r);
       }
@@ -35,8 +37,8 @@ public class MesosUtils {
     return 0;
   }
   
-  private static Ranges getRanges(Offer offer, String name) {
-    for (Resource r: offer.getResourcesList()) {
+  private static Ranges getRanges(List<Resource> resources, String name) {
+    for (Resource r: resources) {
       if (r.hasName() && r.getName().equals(name) && r.hasRanges()) {
         return r.getRanges();
       }
@@ -45,17 +47,17 @@ public class MesosUtils {
     return null;
   }
   
-  private static int getNumRanges(Offer offer, String name) {
+  private static int getNumRanges(List<Resource> resources, String name) {
     int totalRanges = 0;
     
-    Ranges ranges = getRanges(offer, name);
+    Ranges ranges = getRanges(resources, name);
     
     if (ranges == null) {
       return 0;
     }
     
     for (Range range : ranges.getRangeList()) {
-      long num = range.getEnd() - range.getBegin();
+      long num = range.getEnd() - range.getBegin() + 1;
       totalRanges += num;
     }
     
@@ -75,7 +77,7 @@ public class MesosUtils {
     int idx = 0;
     
     for (Range r : portsResource.getRanges().getRangeList()) {
-      for (long port = r.getBegin(); port < r.getEnd(); port++) {
+      for (long port = r.getBegin(); port <= r.getEnd(); port++) {
         ports[idx++] = port;
       }
     }
@@ -84,7 +86,7 @@ public class MesosUtils {
   }
   
   public static Resource getPortsResource(int numPorts, Offer offer) {
-    Ranges ranges = getRanges(offer, PORTS);
+    Ranges ranges = getRanges(offer.getResourcesList(), PORTS);
     
     if (ranges == null) {
       throw new IllegalStateException(String.format("Ports %s should have existed in offer %s", PORTS, offer));
@@ -94,20 +96,21 @@ public class MesosUtils {
     
     int portsSoFar = 0;
     
+    // mesos ranges include both ends
     for (Range range : ranges.getRangeList()) {
-      long rangeEnd = Math.min(numPorts - portsSoFar + range.getBegin(), range.getEnd());
+      if (portsSoFar == numPorts) {
+        break;
+      }
+      
+      long rangeEnd = Math.min(numPorts - portsSoFar + range.getBegin() - 1, range.getEnd());
       
-      long numPortsInRange = rangeEnd - range.getBegin();
+      long numPortsInRange = rangeEnd - range.getBegin() + 1;
     
       rangesBldr.addRange(Range.newBuilder()
           .setBegin(range.getBegin())
           .setEnd(rangeEnd));
       
       portsSoFar += numPortsInRange;
-      
-      if (portsSoFar == numPorts) {
-        break;
-      }
     }
     
     return Resource.newBuilder()
@@ -122,15 +125,23 @@ public class MesosUtils {
   }
 
   public static int getNumCpus(Offer offer) {
-    return getScalar(offer, CPUS);
+    return getScalar(offer.getResourcesList(), CPUS);
   }
 
   public static int getMemory(Offer offer) {
-    return getScalar(offer, MEMORY);
+    return getScalar(offer.getResourcesList(), MEMORY);
   }
 
   public static int getNumPorts(Offer offer) {
-    return getNumRanges(offer, PORTS);
+    return getNumRanges(offer.getResourcesList(), PORTS);
+  }
+  
+  public static Resources getResources(Offer offer) {
+    return getResources(offer.getResourcesList());
+  }
+  
+  public static Resources getResources(List<Resource> resources) {
+    return new Resources(getScalar(resources, CPUS), getScalar(resources, MEMORY), getNumRanges(resources, PORTS));
   }
   
   public static boolean doesOfferMatchResources(Resources resources, Offer offer) {
@@ -155,6 +166,60 @@ public class MesosUtils {
     return true;
   }
   
+  public static List<Resource> subtractResources(List<Resource> resources, List<Resource> subtract) {
+    List<Resource> remaining = Lists.newArrayListWithCapacity(resources.size());
+    
+    for (Resource resource : resources) {
+      Resource.Builder bldr = resource.toBuilder();
+      
+      for (Resource used : subtract) {
+        if (!used.getName().equals(resource.getName())) {
+          continue;
+        }
+        
+        if (bldr.hasScalar() && used.hasScalar()) {
+          bldr.setScalar(Value.Scalar.newBuilder().setValue(bldr.getScalar().getValue() - used.getScalar().getValue()));
+        } else if (bldr.hasRanges() && used.hasRanges()) {
+          bldr.setRanges(subtractRanges(bldr.getRanges(), used.getRanges()));
+        }
+      }
+      
+      remaining.add(bldr.build());
+    }
+    
+    return remaining;
+  }
+  
+  /**
+   * Ranges include both ends, like mesos ranges.
+   */
+  private static Ranges subtractRanges(Ranges ranges, Ranges subtract) {
+    List<Range> remaining = Lists.newArrayList(ranges.getRangeList());
+    
+    for (Range used : subtract.getRangeList()) {
+      List<Range> split = Lists.newArrayListWithCapacity(remaining.size() + 1);
+      
+      for (Range range : remaining) {
+        if (used.getEnd() < range.getBegin() || used.getBegin() > range.getEnd()) {
+          split.add(range);
+          continue;
+        }
+        
+        if (range.getBegin() < used.getBegin()) {
+          split.add(Range.newBuilder().setBegin(range.getBegin()).setEnd(used.getBegin() - 1).build());
+        }
+        
+        if (used.getEnd() < range.getEnd()) {
+          split.add(Range.newBuilder().setBegin(used.getEnd() + 1).setEnd(range.getEnd()).build());
+        }
+      }
+      
+      remaining = split;
+    }
+    
+    return Ranges.newBuilder().addAllRange(remaining).build();
+  }
+  
   public static boolean isTaskDone(TaskState state) {
     return state == TaskState.TASK_FAILED || state == TaskState.TASK_LOST || state == TaskState.TASK_KILLED || state == TaskState.TASK_FINISHED;
   }
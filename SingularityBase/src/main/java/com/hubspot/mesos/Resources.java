@@ -1,5 +1,7 @@
 package com.hubspot.mesos;
 
+import java.util.Objects;
+
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
@@ -28,6 +30,27 @@ public class Resources {
     return memoryMb;
   }
 
+  public boolean fits(Resources required) {
+    return required.getCpus() <= cpus && required.getMemoryMb() <= memoryMb && required.getNumPorts() <= numPorts;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(cpus, memoryMb, numPorts);
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj)
+      return true;
+    if (obj == null)
+      return false;
+    if (getClass() != obj.getClass())
+      return false;
+    Resources other = (Resources) obj;
+    return cpus == other.cpus && memoryMb == other.memoryMb && numPorts == other.numPorts;
+  }
+
   @Override
   public String toString() {
     return "Resources [cpus=" + cpus + ", memoryMb=" + memoryMb + ", numPorts=" + numPorts + "]";
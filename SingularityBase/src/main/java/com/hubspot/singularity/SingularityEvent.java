@@ -0,0 +1,116 @@
+package com.hubspot.singularity;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.hubspot.singularity.SingularityMachineAbstraction.SingularityMachineState;
+import com.hubspot.singularity.SingularityRequestHistory.RequestState;
+
+/**
+ * A task update, request change or machine state change, as emitted on the event stream. Only the fields for its type are set. Offsets increase by
+ * one per event and are only meaningful on the instance that emitted them.
+ */
+public class SingularityEvent extends SingularityJsonObject {
+
+  public enum EventType {
+    TASK_UPDATE, REQUEST_UPDATE, MACHINE_UPDATE;
+  }
+
+  private final long offset;
+  private final long timestamp;
+  private final String type;
+
+  private final SingularityTaskUpdate taskUpdate;
+
+  private final String requestId;
+  private final String requestState;
+  private final SingularityRequest request;
+
+  private final String machineType;
+  private final String machineId;
+  private final String machineState;
+
+  @JsonCreator
+  public SingularityEvent(@JsonProperty("offset") long offset, @JsonProperty("timestamp") long timestamp, @JsonProperty("type") String type, @JsonProperty("taskUpdate") SingularityTaskUpdate taskUpdate,
+      @JsonProperty("requestId") String requestId, @JsonProperty("requestState") String requestState, @JsonProperty("request") SingularityRequest request, @JsonProperty("machineType") String machineType,
+      @JsonProperty("machineId") String machineId, @JsonProperty("machineState") String machineState) {
+    this.offset = offset;
+    this.timestamp = timestamp;
+    this.type = type;
+    this.taskUpdate = taskUpdate;
+    this.requestId = requestId;
+    this.requestState = requestState;
+    this.request = request;
+    this.machineType = machineType;
+    this.machineId = machineId;
+    this.machineState = machineState;
+  }
+
+  public static SingularityEvent taskUpdate(SingularityTaskUpdate taskUpdate) {
+    return new SingularityEvent(-1, System.currentTimeMillis(), EventType.TASK_UPDATE.name(), taskUpdate, taskUpdate.getTask().getTaskId().getRequestId(), null, null, null, null, null);
+  }
+
+  public static SingularityEvent requestUpdate(SingularityRequest request, RequestState requestState) {
+    return new SingularityEvent(-1, System.currentTimeMillis(), EventType.REQUEST_UPDATE.name(), null, request.getId(), requestState.name(), request, null, null, null);
+  }
+
+  public static SingularityEvent machineUpdate(String machineType, String machineId, SingularityMachineState machineState) {
+    return new SingularityEvent(-1, System.currentTimeMillis(), EventType.MACHINE_UPDATE.name(), null, null, null, null, machineType, machineId, machineState.name());
+  }
+
+  public SingularityEvent withOffset(long offset) {
+    return new SingularityEvent(offset, timestamp, type, taskUpdate, requestId, requestState, request, machineType, machineId, machineState);
+  }
+
+  public long getOffset() {
+    return offset;
+  }
+
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  public String getType() {
+    return type;
+  }
+
+  @JsonIgnore
+  public EventType getTypeEnum() {
+    return EventType.valueOf(type);
+  }
+
+  public SingularityTaskUpdate getTaskUpdate() {
+    return taskUpdate;
+  }
+
+  public String getRequestId() {
+    return requestId;
+  }
+
+  public String getRequestState() {
+    return requestState;
+  }
+
+  public SingularityRequest getRequest() {
+    return request;
+  }
+
+  public String getMachineType() {
+    return machineType;
+  }
+
+  public String getMachineId() {
+    return machineId;
+  }
+
+  public String getMachineState() {
+    return machineState;
+  }
+
+  @Override
+  public String toString() {
+    return "SingularityEvent [offset=" + offset + ", timestamp=" + timestamp + ", type=" + type + ", requestId=" + requestId + ", requestState=" + requestState + ", machineType=" + machineType
+        + ", machineId=" + machineId + ", machineState=" + machineState + "]";
+  }
+
+}
@@ -4,7 +4,9 @@ import java.util.List;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ComparisonChain;
+import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
 import com.hubspot.mesos.JavaUtils;
 
@@ -31,6 +33,14 @@ public class SingularityPendingTaskId extends SingularityId implements Comparabl
     return matching;
   }
   
+  public static ListMultimap<String, SingularityPendingTaskId> groupByRequest(List<SingularityPendingTaskId> taskIds) {
+    ListMultimap<String, SingularityPendingTaskId> byRequest = ArrayListMultimap.create();
+    for (SingularityPendingTaskId taskId : taskIds) {
+      byRequest.put(taskId.getRequestId(), taskId);
+    }
+    return byRequest;
+  }
+  
   public String getRequestId() {
     return requestId;
   }
@@ -0,0 +1,77 @@
+package com.hubspot.singularity;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class SingularitySchedulerEventStats {
+
+  private final String eventType;
+  private final int queueDepth;
+  private final long count;
+
+  private final double waitMeanMillis;
+  private final double waitP99Millis;
+  private final long waitMaxMillis;
+
+  private final double processingMeanMillis;
+  private final double processingP99Millis;
+  private final long processingMaxMillis;
+
+  @JsonCreator
+  public SingularitySchedulerEventStats(@JsonProperty("eventType") String eventType, @JsonProperty("queueDepth") int queueDepth, @JsonProperty("count") long count, @JsonProperty("waitMeanMillis") double waitMeanMillis,
+      @JsonProperty("waitP99Millis") double waitP99Millis, @JsonProperty("waitMaxMillis") long waitMaxMillis, @JsonProperty("processingMeanMillis") double processingMeanMillis,
+      @JsonProperty("processingP99Millis") double processingP99Millis, @JsonProperty("processingMaxMillis") long processingMaxMillis) {
+    this.eventType = eventType;
+    this.queueDepth = queueDepth;
+    this.count = count;
+    this.waitMeanMillis = waitMeanMillis;
+    this.waitP99Millis = waitP99Millis;
+    this.waitMaxMillis = waitMaxMillis;
+    this.processingMeanMillis = processingMeanMillis;
+    this.processingP99Millis = processingP99Millis;
+    this.processingMaxMillis = processingMaxMillis;
+  }
+
+  public String getEventType() {
+    return eventType;
+  }
+
+  public int getQueueDepth() {
+    return queueDepth;
+  }
+
+  public long getCount() {
+    return count;
+  }
+
+  public double getWaitMeanMillis() {
+    return waitMeanMillis;
+  }
+
+  public double getWaitP99Millis() {
+    return waitP99Millis;
+  }
+
+  public long getWaitMaxMillis() {
+    return waitMaxMillis;
+  }
+
+  public double getProcessingMeanMillis() {
+    return processingMeanMillis;
+  }
+
+  public double getProcessingP99Millis() {
+    return processingP99Millis;
+  }
+
+  public long getProcessingMaxMillis() {
+    return processingMaxMillis;
+  }
+
+  @Override
+  public String toString() {
+    return "SingularitySchedulerEventStats [eventType=" + eventType + ", queueDepth=" + queueDepth + ", count=" + count + ", waitMeanMillis=" + waitMeanMillis + ", waitP99Millis=" + waitP99Millis + ", waitMaxMillis=" + waitMaxMillis
+        + ", processingMeanMillis=" + processingMeanMillis + ", processingP99Millis=" + processingP99Millis + ", processingMaxMillis=" + processingMaxMillis + "]";
+  }
+
+}
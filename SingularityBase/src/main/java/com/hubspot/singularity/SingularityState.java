@@ -26,12 +26,15 @@ public class SingularityState {
   private final int numWebhooks;
   
   private final List<SingularityHostState> hostStates;
+  
+  private final List<SingularitySchedulerEventStats> schedulerEventStats;
 
   @JsonCreator
   public SingularityState(@JsonProperty("activeTasks") int activeTasks, @JsonProperty("requests") int requests, @JsonProperty("scheduledTasks") int scheduledTasks, @JsonProperty("pendingRequests") int pendingRequests,
       @JsonProperty("cleaningRequests") int cleaningRequests, @JsonProperty("activeSlaves") int activeSlaves, @JsonProperty("deadSlaves") int deadSlaves, 
       @JsonProperty("decomissioningSlaves") int decomissioningSlaves, @JsonProperty("activeRacks") int activeRacks, @JsonProperty("deadRacks") int deadRacks, @JsonProperty("decomissioningRacks") int decomissioningRacks, 
-      @JsonProperty("numWebhooks") int numWebhooks, @JsonProperty("cleaningTasks") int cleaningTasks, @JsonProperty("hostStates") List<SingularityHostState> hostStates) {
+      @JsonProperty("numWebhooks") int numWebhooks, @JsonProperty("cleaningTasks") int cleaningTasks, @JsonProperty("hostStates") List<SingularityHostState> hostStates,
+      @JsonProperty("schedulerEventStats") List<SingularitySchedulerEventStats> schedulerEventStats) {
     this.activeTasks = activeTasks;
     this.requests = requests;
     this.scheduledTasks = scheduledTasks;
@@ -46,6 +49,11 @@ public class SingularityState {
     this.numWebhooks = numWebhooks;
     this.cleaningTasks = cleaningTasks;
     this.hostStates = hostStates;
+    this.schedulerEventStats = schedulerEventStats;
+  }
+
+  public List<SingularitySchedulerEventStats> getSchedulerEventStats() {
+    return schedulerEventStats;
   }
 
   public List<SingularityHostState> getHostStates() {
@@ -108,7 +116,7 @@ public class SingularityState {
   public String toString() {
     return "SingularityState [activeTasks=" + activeTasks + ", requests=" + requests + ", scheduledTasks=" + scheduledTasks + ", cleaningTasks=" + cleaningTasks + ", pendingRequests=" + pendingRequests + ", cleaningRequests="
         + cleaningRequests + ", activeSlaves=" + activeSlaves + ", deadSlaves=" + deadSlaves + ", decomissioningSlaves=" + decomissioningSlaves + ", activeRacks=" + activeRacks + ", deadRacks=" + deadRacks + ", decomissioningRacks="
-        + decomissioningRacks + ", numWebhooks=" + numWebhooks + ", hostStates=" + hostStates + "]";
+        + decomissioningRacks + ", numWebhooks=" + numWebhooks + ", hostStates=" + hostStates + ", schedulerEventStats=" + schedulerEventStats + "]";
   }
 
 }
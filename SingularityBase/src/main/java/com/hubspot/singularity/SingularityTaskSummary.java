@@ -0,0 +1,69 @@
+package com.hubspot.singularity;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.hubspot.mesos.MesosUtils;
+import com.hubspot.mesos.Resources;
+
+/**
+ * The parts of an active task needed for scheduling decisions. Unknown properties are ignored so that summaries with fields added later can still
+ * be read.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class SingularityTaskSummary extends SingularityJsonObject {
+
+  private final SingularityTaskId taskId;
+  private final String slaveId;
+  private final Resources resources;
+
+  @JsonCreator
+  public SingularityTaskSummary(@JsonProperty("taskId") SingularityTaskId taskId, @JsonProperty("slaveId") String slaveId, @JsonProperty("resources") Resources resources) {
+    this.taskId = taskId;
+    this.slaveId = slaveId;
+    this.resources = resources;
+  }
+
+  public static SingularityTaskSummary fromTask(SingularityTask task) {
+    return new SingularityTaskSummary(task.getTaskId(), task.getMesosTask().getSlaveId().getValue(), MesosUtils.getResources(task.getMesosTask().getResourcesList()));
+  }
+
+  public SingularityTaskId getTaskId() {
+    return taskId;
+  }
+
+  public String getSlaveId() {
+    return slaveId;
+  }
+
+  public Resources getResources() {
+    return resources;
+  }
+
+  @JsonIgnore
+  public String getRequestId() {
+    return taskId.getRequestId();
+  }
+
+  @JsonIgnore
+  public String getHost() {
+    return taskId.getHost();
+  }
+
+  @JsonIgnore
+  public String getRackId() {
+    return taskId.getRackId();
+  }
+
+  @JsonIgnore
+  public long getStartedAt() {
+    return taskId.getStartedAt();
+  }
+
+  @Override
+  public String toString() {
+    return "SingularityTaskSummary [taskId=" + taskId + ", slaveId=" + slaveId + ", resources=" + resources + "]";
+  }
+
+}
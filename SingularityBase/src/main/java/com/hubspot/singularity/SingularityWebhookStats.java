@@ -0,0 +1,88 @@
+package com.hubspot.singularity;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class SingularityWebhookStats {
+
+  private final String hook;
+  private final int queued;
+  private final long spilled;
+  private final int inFlight;
+  private final long delivered;
+  private final long failures;
+  private final long dropped;
+  private final long abandoned;
+  private final int consecutiveFailures;
+
+  private final double latencyMeanMillis;
+  private final double latencyP99Millis;
+  private final long latencyMaxMillis;
+
+  @JsonCreator
+  public SingularityWebhookStats(@JsonProperty("hook") String hook, @JsonProperty("queued") int queued, @JsonProperty("spilled") long spilled, @JsonProperty("inFlight") int inFlight,
+      @JsonProperty("delivered") long delivered, @JsonProperty("failures") long failures, @JsonProperty("dropped") long dropped, @JsonProperty("abandoned") long abandoned,
+      @JsonProperty("consecutiveFailures") int consecutiveFailures, @JsonProperty("latencyMeanMillis") double latencyMeanMillis, @JsonProperty("latencyP99Millis") double latencyP99Millis, @JsonProperty("latencyMaxMillis") long latencyMaxMillis) {
+    this.hook = hook;
+    this.queued = queued;
+    this.spilled = spilled;
+    this.inFlight = inFlight;
+    this.delivered = delivered;
+    this.failures = failures;
+    this.dropped = dropped;
+    this.abandoned = abandoned;
+    this.consecutiveFailures = consecutiveFailures;
+    this.latencyMeanMillis = latencyMeanMillis;
+    this.latencyP99Millis = latencyP99Millis;
+    this.latencyMaxMillis = latencyMaxMillis;
+  }
+
+  public String getHook() {
+    return hook;
+  }
+
+  public int getQueued() {
+    return queued;
+  }
+
+  public long getSpilled() {
+    return spilled;
+  }
+
+  public int getInFlight() {
+    return inFlight;
+  }
+
+  public long getDelivered() {
+    return delivered;
+  }
+
+  public long getFailures() {
+    return failures;
+  }
+
+  public long getDropped() {
+    return dropped;
+  }
+
+  public long getAbandoned() {
+    return abandoned;
+  }
+
+  public int getConsecutiveFailures() {
+    return consecutiveFailures;
+  }
+
+  public double getLatencyMeanMillis() {
+    return latencyMeanMillis;
+  }
+
+  public double getLatencyP99Millis() {
+    return latencyP99Millis;
+  }
+
+  public long getLatencyMaxMillis() {
+    return latencyMaxMillis;
+  }
+
+}
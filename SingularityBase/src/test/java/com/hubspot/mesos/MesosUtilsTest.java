@@ -0,0 +1,103 @@
+package com.hubspot.mesos;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.mesos.Protos.FrameworkID;
+import org.apache.mesos.Protos.Offer;
+import org.apache.mesos.Protos.OfferID;
+import org.apache.mesos.Protos.Resource;
+import org.apache.mesos.Protos.SlaveID;
+import org.apache.mesos.Protos.Value.Range;
+import org.apache.mesos.Protos.Value.Ranges;
+import org.apache.mesos.Protos.Value.Type;
+import org.junit.Test;
+
+public class MesosUtilsTest {
+
+  private static Resource ports(long... beginsAndEnds) {
+    final Ranges.Builder ranges = Ranges.newBuilder();
+
+    for (int i = 0; i < beginsAndEnds.length; i += 2) {
+      ranges.addRange(Range.newBuilder().setBegin(beginsAndEnds[i]).setEnd(beginsAndEnds[i + 1]));
+    }
+
+    return Resource.newBuilder().setName(MesosUtils.PORTS).setType(Type.RANGES).setRanges(ranges).build();
+  }
+
+  private static Offer offer(Resource... resources) {
+    return Offer.newBuilder()
+        .setId(OfferID.newBuilder().setValue("offer"))
+        .setFrameworkId(FrameworkID.newBuilder().setValue("framework"))
+        .setSlaveId(SlaveID.newBuilder().setValue("slave"))
+        .setHostname("host")
+        .addAllResources(Arrays.asList(resources))
+        .build();
+  }
+
+  private static Resource getPorts(List<Resource> resources) {
+    for (Resource resource : resources) {
+      if (resource.getName().equals(MesosUtils.PORTS)) {
+        return resource;
+      }
+    }
+
+    return null;
+  }
+
+  @Test
+  public void testRangesIncludeBothEnds() {
+    final Offer offer = offer(ports(31000, 31000, 31005, 31009));
+
+    assertEquals(6, MesosUtils.getNumPorts(offer));
+    assertEquals(6, MesosUtils.getResources(offer).getNumPorts());
+  }
+
+  @Test
+  public void testPortsResourceTakesExactlyTheRequestedPorts() {
+    final Offer offer = offer(ports(31000, 31001, 31005, 31009));
+
+    final Resource portsResource = MesosUtils.getPortsResource(3, offer);
+
+    assertEquals(ports(31000, 31001, 31005, 31005), portsResource);
+    assertArrayEquals(new long[] { 31000, 31001, 31005 }, MesosUtils.getPorts(portsResource, 3));
+  }
+
+  @Test
+  public void testSubtractResources() {
+    final List<Resource> offered = Arrays.asList(MesosUtils.getCpuResource(4), MesosUtils.getMemoryResource(1024), ports(31000, 31009));
+    final List<Resource> used = Arrays.asList(MesosUtils.getCpuResource(1), MesosUtils.getMemoryResource(256), ports(31000, 31000, 31004, 31005));
+
+    final List<Resource> remaining = MesosUtils.subtractResources(offered, used);
+
+    assertEquals(3, MesosUtils.getResources(remaining).getCpus());
+    assertEquals(768, MesosUtils.getResources(remaining).getMemoryMb());
+    assertEquals(ports(31001, 31003, 31006, 31009), getPorts(remaining));
+  }
+
+  @Test
+  public void testSubtractRangesAtTheEdges() {
+    final List<Resource> offered = Arrays.asList(ports(31000, 31000, 31002, 31004));
+
+    assertEquals(ports(31002, 31004), getPorts(MesosUtils.subtractResources(offered, Arrays.asList(ports(31000, 31000)))));
+    assertEquals(ports(31000, 31000, 31002, 31003), getPorts(MesosUtils.subtractResources(offered, Arrays.asList(ports(31004, 31004)))));
+    assertEquals(ports(), getPorts(MesosUtils.subtractResources(offered, Arrays.asList(ports(31000, 31004)))));
+  }
+
+  @Test
+  public void testPackedTasksDontShareAPort() {
+    final Offer offer = offer(ports(31000, 31003));
+
+    final Resource first = MesosUtils.getPortsResource(1, offer);
+    final Offer remaining = offer.toBuilder().clearResources().addAllResources(MesosUtils.subtractResources(offer.getResourcesList(), Arrays.asList(first))).build();
+    final Resource second = MesosUtils.getPortsResource(1, remaining);
+
+    assertEquals(ports(31000, 31000), first);
+    assertEquals(ports(31001, 31001), second);
+    assertEquals(3, MesosUtils.getNumPorts(remaining));
+  }
+
+}
@@ -11,6 +11,15 @@ import ch.qos.logback.classic.LoggerContext;
 import com.google.common.io.Closeables;
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
+import com.hubspot.singularity.data.ActiveTaskCache;
+import com.hubspot.singularity.data.RequestCache;
+import com.hubspot.singularity.data.ScheduledTaskCache;
+import com.hubspot.singularity.data.ZooKeeperBuckets;
+import com.hubspot.singularity.data.history.BatchingHistoryManager;
+import com.hubspot.singularity.hooks.WebhookManager;
+import com.hubspot.singularity.mesos.SingularityLogSupport;
+import com.hubspot.singularity.mesos.SingularitySchedulerEventLoop;
+import com.hubspot.singularity.scheduler.SingularityTaskKiller;
 
 public class SingularityAbort {
 
@@ -20,13 +29,33 @@ public class SingularityAbort {
   private final LeaderLatch leaderLatch;
   private final SingularityDriverManager driverManager;
   private final SingularityStatePoller statePoller;
+  private final BatchingHistoryManager historyManager;
+  private final SingularityLogSupport logSupport;
+  private final ActiveTaskCache activeTaskCache;
+  private final RequestCache requestCache;
+  private final ScheduledTaskCache scheduledTaskCache;
+  private final ZooKeeperBuckets buckets;
+  private final WebhookManager webhookManager;
+  private final SingularitySchedulerEventLoop eventLoop;
+  private final SingularityTaskKiller taskKiller;
   
   @Inject
-  public SingularityAbort(@Named(SingularityModule.UNDERLYING_CURATOR) CuratorFramework curator, LeaderLatch leaderLatch, SingularityDriverManager driverManager, SingularityStatePoller statePoller) {
+  public SingularityAbort(@Named(SingularityModule.UNDERLYING_CURATOR) CuratorFramework curator, LeaderLatch leaderLatch, SingularityDriverManager driverManager, SingularityStatePoller statePoller, BatchingHistoryManager historyManager,
+      SingularityLogSupport logSupport, ActiveTaskCache activeTaskCache, RequestCache requestCache, ScheduledTaskCache scheduledTaskCache, ZooKeeperBuckets buckets,
+      WebhookManager webhookManager, SingularitySchedulerEventLoop eventLoop, SingularityTaskKiller taskKiller) {
     this.curator = curator;
     this.leaderLatch = leaderLatch;
     this.driverManager = driverManager;
     this.statePoller = statePoller;
+    this.historyManager = historyManager;
+    this.logSupport = logSupport;
+    this.activeTaskCache = activeTaskCache;
+    this.requestCache = requestCache;
+    this.scheduledTaskCache = scheduledTaskCache;
+    this.buckets = buckets;
+    this.webhookManager = webhookManager;
+    this.eventLoop = eventLoop;
+    this.taskKiller = taskKiller;
   }
 
   public void abort() {
@@ -46,7 +75,17 @@ public class SingularityAbort {
     
     closeDriver();
     
+    drainEventLoop();
+    
+    stopTaskKiller();
+    
+    stopLogSupport();
+    
+    drainHistory();
+    
     closeLeader();
+    
+    stopCaches();
   
     closeCurator();
   }
@@ -63,6 +102,50 @@ public class SingularityAbort {
     }
   }
   
+  private void drainEventLoop() {
+    try {
+      eventLoop.stop();
+    } catch (Throwable t) {
+      LOG.warn("While draining scheduler event loop", t);
+    }
+  }
+  
+  private void stopTaskKiller() {
+    try {
+      taskKiller.stop();
+    } catch (Throwable t) {
+      LOG.warn("While stopping task killer", t);
+    }
+  }
+  
+  private void stopLogSupport() {
+    try {
+      logSupport.stop();
+    } catch (Throwable t) {
+      LOG.warn("While stopping log support", t);
+    }
+  }
+  
+  private void drainHistory() {
+    try {
+      historyManager.stop();
+    } catch (Throwable t) {
+      LOG.warn("While draining history", t);
+    }
+  }
+  
+  private void stopCaches() {
+    try {
+      activeTaskCache.stop();
+      requestCache.stop();
+      scheduledTaskCache.stop();
+      webhookManager.stop();
+      buckets.stop();
+    } catch (Throwable t) {
+      LOG.warn("While stopping caches", t);
+    }
+  }
+  
   public void closeCurator() {
     try {
       Closeables.close(curator, false);
@@ -0,0 +1,99 @@
+package com.hubspot.singularity;
+
+import io.dropwizard.cli.ConfiguredCommand;
+import io.dropwizard.setup.Bootstrap;
+import net.sourceforge.argparse4j.impl.Arguments;
+import net.sourceforge.argparse4j.inf.Namespace;
+import net.sourceforge.argparse4j.inf.Subparser;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.zookeeper.KeeperException.NoNodeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.io.Closeables;
+import com.hubspot.singularity.config.SingularityConfiguration;
+import com.hubspot.singularity.config.ZooKeeperConfiguration;
+import com.hubspot.singularity.data.RequestManager;
+import com.hubspot.singularity.data.TaskManager;
+import com.hubspot.singularity.data.ZooKeeperBuckets;
+
+/**
+ * Moves active tasks, scheduled tasks and pending requests from the flat roots older versions wrote into ZK buckets. Schedulers don't read the flat roots,
+ * so this has to run between stopping the old version and starting this one, and it refuses to run while any scheduler holds or waits on the leader latch.
+ *
+ * The flat roots can hold more children than a getChildren response fits in the default jute.maxbuffer, so it is raised for this process before
+ * ZooKeeper is first used.
+ */
+public class SingularityBucketMigrationCommand extends ConfiguredCommand<SingularityConfiguration> {
+
+  private final static Logger LOG = LoggerFactory.getLogger(SingularityBucketMigrationCommand.class);
+
+  private final static int DEFAULT_MAX_BUFFER_BYTES = 64 * 1024 * 1024;
+
+  public SingularityBucketMigrationCommand() {
+    super("migrate-buckets", "Moves ZK nodes written by versions without buckets into the bucketed layout");
+  }
+
+  @Override
+  public void configure(Subparser subparser) {
+    super.configure(subparser);
+
+    subparser.addArgument("--max-buffer-bytes")
+      .dest("maxBufferBytes")
+      .type(Integer.class)
+      .setDefault(DEFAULT_MAX_BUFFER_BYTES)
+      .help("jute.maxbuffer for this process, which must fit the largest flat root's listing");
+
+    subparser.addArgument("--force")
+      .dest("force")
+      .action(Arguments.storeTrue())
+      .help("Migrate even if schedulers are running");
+  }
+
+  @Override
+  protected void run(Bootstrap<SingularityConfiguration> bootstrap, Namespace namespace, SingularityConfiguration configuration) throws Exception {
+    if (System.getProperty("jute.maxbuffer") == null) {
+      System.setProperty("jute.maxbuffer", Integer.toString(namespace.getInt("maxBufferBytes")));
+    }
+
+    final SingularityModule module = new SingularityModule();
+    final ZooKeeperConfiguration zooKeeperConfiguration = configuration.getZooKeeperConfiguration();
+    final CuratorFramework underlyingCurator = module.provideCurator(zooKeeperConfiguration);
+    final CuratorFramework curator = module.provideNamespaceCurator(underlyingCurator, zooKeeperConfiguration);
+
+    final ZooKeeperBuckets buckets = new ZooKeeperBuckets(curator, configuration);
+
+    try {
+      final List<String> participants = getLeaderParticipants(curator);
+
+      if (!participants.isEmpty() && !namespace.getBoolean("force")) {
+        LOG.error(String.format("%s scheduler(s) are running (%s) - stop them before migrating, or pass --force", participants.size(), participants));
+        return;
+      }
+
+      buckets.checkNumBuckets();
+
+      final long start = System.currentTimeMillis();
+      final int migrated = TaskManager.migrateToBuckets(buckets) + RequestManager.migrateToBuckets(buckets);
+
+      LOG.info(String.format("Migrated %s nodes into %s ZK buckets in %sms", migrated, buckets.getNumBuckets(), System.currentTimeMillis() - start));
+    } finally {
+      buckets.stop();
+
+      Closeables.close(underlyingCurator, true);
+    }
+  }
+
+  private List<String> getLeaderParticipants(CuratorFramework curator) throws Exception {
+    try {
+      return curator.getChildren().forPath(SingularityModule.LEADER_PATH);
+    } catch (NoNodeException nne) {
+      return Collections.emptyList();
+    }
+  }
+
+}
@@ -11,6 +11,11 @@ import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Optional;
 import com.google.inject.Inject;
+import com.hubspot.singularity.data.ActiveTaskCache;
+import com.hubspot.singularity.data.RequestCache;
+import com.hubspot.singularity.data.ScheduledTaskCache;
+import com.hubspot.singularity.data.ZooKeeperBuckets;
+import com.hubspot.singularity.hooks.WebhookManager;
 
 public class SingularityManaged implements Managed, LeaderLatchListener {
   
@@ -20,16 +25,27 @@ public class SingularityManaged implements Managed, LeaderLatchListener {
   private final SingularityDriverManager driverManager;
   private final SingularityAbort abort;
   private final SingularityStatePoller statePoller;
+  private final ActiveTaskCache activeTaskCache;
+  private final RequestCache requestCache;
+  private final ScheduledTaskCache scheduledTaskCache;
+  private final WebhookManager webhookManager;
+  private final ZooKeeperBuckets buckets;
   
   private boolean isMaster;
   private Protos.Status currentStatus;
   
   @Inject
-  public SingularityManaged(SingularityDriverManager driverManager, LeaderLatch leaderLatch, SingularityAbort abort, SingularityStatePoller statePoller) {
+  public SingularityManaged(SingularityDriverManager driverManager, LeaderLatch leaderLatch, SingularityAbort abort, SingularityStatePoller statePoller, ActiveTaskCache activeTaskCache, RequestCache requestCache, ScheduledTaskCache scheduledTaskCache,
+      WebhookManager webhookManager, ZooKeeperBuckets buckets) {
     this.driverManager = driverManager;
     this.leaderLatch = leaderLatch;
     this.abort = abort;
     this.statePoller = statePoller;
+    this.activeTaskCache = activeTaskCache;
+    this.requestCache = requestCache;
+    this.scheduledTaskCache = scheduledTaskCache;
+    this.webhookManager = webhookManager;
+    this.buckets = buckets;
     
     this.currentStatus = Protos.Status.DRIVER_NOT_STARTED;
     this.isMaster = false;
@@ -41,7 +57,14 @@ public class SingularityManaged implements Managed, LeaderLatchListener {
   public void start() throws Exception {
     LOG.info("Starting leader latch...");
     
+    buckets.checkNumBuckets();
+    
     statePoller.start(this, abort);
+    
+    activeTaskCache.start();
+    requestCache.start();
+    scheduledTaskCache.start();
+    webhookManager.start();
 
     leaderLatch.start();
   }
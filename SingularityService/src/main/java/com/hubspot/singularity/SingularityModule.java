@@ -12,8 +12,10 @@ import org.apache.curator.framework.recipes.leader.LeaderLatch;
 import org.apache.curator.retry.ExponentialBackoffRetry;
 import org.skife.jdbi.v2.DBI;
 
+import com.codahale.metrics.MetricRegistry;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import com.google.common.base.Optional;
 import com.google.common.base.Strings;
 import com.google.inject.AbstractModule;
@@ -27,24 +29,46 @@ import com.hubspot.singularity.config.MesosConfiguration;
 import com.hubspot.singularity.config.SMTPConfiguration;
 import com.hubspot.singularity.config.SingularityConfiguration;
 import com.hubspot.singularity.config.ZooKeeperConfiguration;
+import com.hubspot.singularity.data.ActiveTaskCache;
+import com.hubspot.singularity.data.RequestCache;
+import com.hubspot.singularity.data.ScheduledTaskCache;
+import com.hubspot.singularity.data.ZooKeeperBuckets;
+import com.hubspot.singularity.data.history.BatchingHistoryManager;
 import com.hubspot.singularity.data.history.HistoryJDBI;
 import com.hubspot.singularity.data.history.HistoryManager;
-import com.hubspot.singularity.data.history.JDBIHistoryManager;
+import com.hubspot.singularity.hooks.SingularityEventLog;
+import com.hubspot.singularity.hooks.WebhookManager;
+import com.hubspot.singularity.mesos.SingularityLogSupport;
+import com.hubspot.singularity.mesos.SingularitySchedulerEventLoop;
+import com.hubspot.singularity.scheduler.SingularityCronScheduleCache;
+import com.hubspot.singularity.scheduler.SingularityTaskKiller;
 
 public class SingularityModule extends AbstractModule {
   
-  private static final String LEADER_PATH = "/leader";
+  static final String LEADER_PATH = "/leader";
   
   public static final String MASTER_PROPERTY = "singularity.master";
   public static final String ZK_NAMESPACE_PROPERTY = "singularity.namespace";
   public static final String HOSTNAME_PROPERTY = "singularity.hostname";
   public static final String HTTP_PORT_PROPERTY = "singularity.http.port";
   public static final String UNDERLYING_CURATOR = "curator.base.instance";
+  public static final String SMILE_OBJECT_MAPPER = "object.mapper.smile";
   
   @Override
   protected void configure() {
-    bind(HistoryManager.class).to(JDBIHistoryManager.class);
+    bind(HistoryManager.class).to(BatchingHistoryManager.class);
+    bind(BatchingHistoryManager.class).in(Scopes.SINGLETON);
     bind(SingularityDriverManager.class).in(Scopes.SINGLETON);
+    bind(SingularityLogSupport.class).in(Scopes.SINGLETON);
+    bind(SingularitySchedulerEventLoop.class).in(Scopes.SINGLETON);
+    bind(ActiveTaskCache.class).in(Scopes.SINGLETON);
+    bind(RequestCache.class).in(Scopes.SINGLETON);
+    bind(ScheduledTaskCache.class).in(Scopes.SINGLETON);
+    bind(ZooKeeperBuckets.class).in(Scopes.SINGLETON);
+    bind(WebhookManager.class).in(Scopes.SINGLETON);
+    bind(SingularityEventLog.class).in(Scopes.SINGLETON);
+    bind(SingularityCronScheduleCache.class).in(Scopes.SINGLETON);
+    bind(SingularityTaskKiller.class).in(Scopes.SINGLETON);
     bind(SingularityManaged.class).in(Scopes.SINGLETON);
     bind(SingularityStatePoller.class).in(Scopes.SINGLETON);
   }
@@ -63,6 +87,21 @@ public class SingularityModule extends AbstractModule {
     return OBJECT_MAPPER;
   }
   
+  @Provides
+  @Singleton
+  @Named(SMILE_OBJECT_MAPPER)
+  public ObjectMapper getSmileObjectMapper() {
+    return Jackson.newObjectMapper(new SmileFactory())
+        .setSerializationInclusion(Include.NON_NULL)
+        .registerModule(new ProtobufModule());
+  }
+  
+  @Provides
+  @Singleton
+  public MetricRegistry getMetricRegistry(Environment environment) {
+    return environment.metrics();
+  }
+  
   @Provides
   @Named(MASTER_PROPERTY)
   public String providesMaster(SingularityConfiguration config) {
@@ -26,6 +26,8 @@ public class SingularityService extends Application<SingularityConfiguration> {
     bootstrap.addBundle(new AssetsBundle("/static/static/", "/static/"));
     
     bootstrap.getObjectMapper().registerModule(new ProtobufModule());
+    
+    bootstrap.addCommand(new SingularityBucketMigrationCommand());
   }
 
   @Override
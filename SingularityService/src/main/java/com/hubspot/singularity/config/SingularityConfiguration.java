@@ -35,9 +35,270 @@ public class SingularityConfiguration extends Configuration {
   @NotNull
   private long saveStateEverySeconds = 60;
   
+  @NotNull
+  private double maxTaskKillsPerSecond = 50;
+  
+  @NotNull
+  private int maxStatusUpdateBatchSize = 500;
+  
+  @NotNull
+  private int maxQueuedStartupUpdates = 100000;
+  
+  @NotNull
+  private int webhookQueueSize = 1000;
+  
+  @NotNull
+  private int webhookBatchSize = 1;
+  
+  @NotNull
+  private long webhookRetryDelayMillis = 1000;
+  
+  @NotNull
+  private long webhookMaxRetryDelayMillis = 60000;
+  
+  @NotNull
+  private int webhookMaxRetries = 100;
+  
+  @NotNull
+  private long webhookRequestTimeoutMillis = 10000;
+  
+  private String webhookSpillDirectory;
+  
+  @NotNull
+  private long webhookMaxSpillBytes = 1024L * 1024L * 1024L;
+  
+  @NotNull
+  private int eventLogSize = 10000;
+  
+  @NotNull
+  private int maxEventStreams = 100;
+  
+  @NotNull
+  private long eventStreamKeepAliveSeconds = 15;
+  
   @NotNull
   private long killDecomissionedTasksAfterNewTasksSeconds = 300;
   
+  @NotNull
+  private int historyQueueSize = 10000;
+  
+  @NotNull
+  private int historyBatchSize = 500;
+  
+  @NotNull
+  private long historyEnqueueTimeoutMillis = 100;
+  
+  @NotNull
+  private long historyMaxEnqueueBlockMillis = 2000;
+  
+  @NotNull
+  private long historyRetryDelayMillis = 1000;
+  
+  @NotNull
+  private long historyMaxRetryDelayMillis = 30000;
+  
+  @NotNull
+  private long historyDrainTimeoutSeconds = 30;
+  
+  @NotNull
+  private String zooKeeperDataEncoding = "JSON";
+  
+  @NotNull
+  private boolean zooKeeperDataCompression = false;
+  
+  @NotNull
+  private boolean zooKeeperActiveTaskSummaries = false;
+  
+  @NotNull
+  private int zooKeeperBuckets = 32;
+  
+  @NotNull
+  private int zooKeeperListingThreads = 8;
+  
+  @NotNull
+  private long activeTaskCacheCheckEverySeconds = 300;
+  
+  @NotNull
+  private long schedulerEventMaxWaitMillis = 5000;
+  
+  @NotNull
+  private long schedulerEventDrainTimeoutSeconds = 30;
+  
+  @NotNull
+  private int logFetchMaxThreads = 15;
+  
+  @NotNull
+  private long logFetchCoalesceMillis = 250;
+  
+  @NotNull
+  private int logFetchMaxRetries = 4;
+  
+  @NotNull
+  private long logFetchRetryDelayMillis = 2000;
+  
+  @NotNull
+  private int cronFireTimesToPrecompute = 10;
+  
+  public int getCronFireTimesToPrecompute() {
+    return cronFireTimesToPrecompute;
+  }
+
+  public void setCronFireTimesToPrecompute(int cronFireTimesToPrecompute) {
+    this.cronFireTimesToPrecompute = cronFireTimesToPrecompute;
+  }
+
+  public String getZooKeeperDataEncoding() {
+    return zooKeeperDataEncoding;
+  }
+
+  public void setZooKeeperDataEncoding(String zooKeeperDataEncoding) {
+    this.zooKeeperDataEncoding = zooKeeperDataEncoding;
+  }
+
+  public boolean isZooKeeperDataCompression() {
+    return zooKeeperDataCompression;
+  }
+
+  public void setZooKeeperDataCompression(boolean zooKeeperDataCompression) {
+    this.zooKeeperDataCompression = zooKeeperDataCompression;
+  }
+
+  public boolean isZooKeeperActiveTaskSummaries() {
+    return zooKeeperActiveTaskSummaries;
+  }
+
+  public void setZooKeeperActiveTaskSummaries(boolean zooKeeperActiveTaskSummaries) {
+    this.zooKeeperActiveTaskSummaries = zooKeeperActiveTaskSummaries;
+  }
+
+  public int getZooKeeperBuckets() {
+    return zooKeeperBuckets;
+  }
+
+  public void setZooKeeperBuckets(int zooKeeperBuckets) {
+    this.zooKeeperBuckets = zooKeeperBuckets;
+  }
+
+  public int getZooKeeperListingThreads() {
+    return zooKeeperListingThreads;
+  }
+
+  public void setZooKeeperListingThreads(int zooKeeperListingThreads) {
+    this.zooKeeperListingThreads = zooKeeperListingThreads;
+  }
+
+  public long getActiveTaskCacheCheckEverySeconds() {
+    return activeTaskCacheCheckEverySeconds;
+  }
+
+  public void setActiveTaskCacheCheckEverySeconds(long activeTaskCacheCheckEverySeconds) {
+    this.activeTaskCacheCheckEverySeconds = activeTaskCacheCheckEverySeconds;
+  }
+
+  public long getSchedulerEventMaxWaitMillis() {
+    return schedulerEventMaxWaitMillis;
+  }
+
+  public void setSchedulerEventMaxWaitMillis(long schedulerEventMaxWaitMillis) {
+    this.schedulerEventMaxWaitMillis = schedulerEventMaxWaitMillis;
+  }
+
+  public long getSchedulerEventDrainTimeoutSeconds() {
+    return schedulerEventDrainTimeoutSeconds;
+  }
+
+  public void setSchedulerEventDrainTimeoutSeconds(long schedulerEventDrainTimeoutSeconds) {
+    this.schedulerEventDrainTimeoutSeconds = schedulerEventDrainTimeoutSeconds;
+  }
+
+  public int getLogFetchMaxThreads() {
+    return logFetchMaxThreads;
+  }
+
+  public void setLogFetchMaxThreads(int logFetchMaxThreads) {
+    this.logFetchMaxThreads = logFetchMaxThreads;
+  }
+
+  public long getLogFetchCoalesceMillis() {
+    return logFetchCoalesceMillis;
+  }
+
+  public void setLogFetchCoalesceMillis(long logFetchCoalesceMillis) {
+    this.logFetchCoalesceMillis = logFetchCoalesceMillis;
+  }
+
+  public int getLogFetchMaxRetries() {
+    return logFetchMaxRetries;
+  }
+
+  public void setLogFetchMaxRetries(int logFetchMaxRetries) {
+    this.logFetchMaxRetries = logFetchMaxRetries;
+  }
+
+  public long getLogFetchRetryDelayMillis() {
+    return logFetchRetryDelayMillis;
+  }
+
+  public void setLogFetchRetryDelayMillis(long logFetchRetryDelayMillis) {
+    this.logFetchRetryDelayMillis = logFetchRetryDelayMillis;
+  }
+
+  public int getHistoryQueueSize() {
+    return historyQueueSize;
+  }
+
+  public void setHistoryQueueSize(int historyQueueSize) {
+    this.historyQueueSize = historyQueueSize;
+  }
+
+  public int getHistoryBatchSize() {
+    return historyBatchSize;
+  }
+
+  public void setHistoryBatchSize(int historyBatchSize) {
+    this.historyBatchSize = historyBatchSize;
+  }
+
+  public long getHistoryEnqueueTimeoutMillis() {
+    return historyEnqueueTimeoutMillis;
+  }
+
+  public void setHistoryEnqueueTimeoutMillis(long historyEnqueueTimeoutMillis) {
+    this.historyEnqueueTimeoutMillis = historyEnqueueTimeoutMillis;
+  }
+
+  public long getHistoryMaxEnqueueBlockMillis() {
+    return historyMaxEnqueueBlockMillis;
+  }
+
+  public void setHistoryMaxEnqueueBlockMillis(long historyMaxEnqueueBlockMillis) {
+    this.historyMaxEnqueueBlockMillis = historyMaxEnqueueBlockMillis;
+  }
+
+  public long getHistoryRetryDelayMillis() {
+    return historyRetryDelayMillis;
+  }
+
+  public void setHistoryRetryDelayMillis(long historyRetryDelayMillis) {
+    this.historyRetryDelayMillis = historyRetryDelayMillis;
+  }
+
+  public long getHistoryMaxRetryDelayMillis() {
+    return historyMaxRetryDelayMillis;
+  }
+
+  public void setHistoryMaxRetryDelayMillis(long historyMaxRetryDelayMillis) {
+    this.historyMaxRetryDelayMillis = historyMaxRetryDelayMillis;
+  }
+
+  public long getHistoryDrainTimeoutSeconds() {
+    return historyDrainTimeoutSeconds;
+  }
+
+  public void setHistoryDrainTimeoutSeconds(long historyDrainTimeoutSeconds) {
+    this.historyDrainTimeoutSeconds = historyDrainTimeoutSeconds;
+  }
+
   public long getKillDecomissionedTasksAfterNewTasksSeconds() {
     return killDecomissionedTasksAfterNewTasksSeconds;
   }
@@ -46,6 +307,118 @@ public class SingularityConfiguration extends Configuration {
     this.killDecomissionedTasksAfterNewTasksSeconds = killDecomissionedTasksAfterNewTasksSeconds;
   }
 
+  public double getMaxTaskKillsPerSecond() {
+    return maxTaskKillsPerSecond;
+  }
+
+  public void setMaxTaskKillsPerSecond(double maxTaskKillsPerSecond) {
+    this.maxTaskKillsPerSecond = maxTaskKillsPerSecond;
+  }
+
+  public int getMaxStatusUpdateBatchSize() {
+    return maxStatusUpdateBatchSize;
+  }
+
+  public void setMaxStatusUpdateBatchSize(int maxStatusUpdateBatchSize) {
+    this.maxStatusUpdateBatchSize = maxStatusUpdateBatchSize;
+  }
+
+  public int getMaxQueuedStartupUpdates() {
+    return maxQueuedStartupUpdates;
+  }
+
+  public void setMaxQueuedStartupUpdates(int maxQueuedStartupUpdates) {
+    this.maxQueuedStartupUpdates = maxQueuedStartupUpdates;
+  }
+
+  public int getWebhookQueueSize() {
+    return webhookQueueSize;
+  }
+
+  public void setWebhookQueueSize(int webhookQueueSize) {
+    this.webhookQueueSize = webhookQueueSize;
+  }
+
+  public int getWebhookBatchSize() {
+    return webhookBatchSize;
+  }
+
+  public void setWebhookBatchSize(int webhookBatchSize) {
+    this.webhookBatchSize = webhookBatchSize;
+  }
+
+  public long getWebhookRetryDelayMillis() {
+    return webhookRetryDelayMillis;
+  }
+
+  public void setWebhookRetryDelayMillis(long webhookRetryDelayMillis) {
+    this.webhookRetryDelayMillis = webhookRetryDelayMillis;
+  }
+
+  public long getWebhookMaxRetryDelayMillis() {
+    return webhookMaxRetryDelayMillis;
+  }
+
+  public void setWebhookMaxRetryDelayMillis(long webhookMaxRetryDelayMillis) {
+    this.webhookMaxRetryDelayMillis = webhookMaxRetryDelayMillis;
+  }
+
+  public int getWebhookMaxRetries() {
+    return webhookMaxRetries;
+  }
+
+  public void setWebhookMaxRetries(int webhookMaxRetries) {
+    this.webhookMaxRetries = webhookMaxRetries;
+  }
+
+  public long getWebhookRequestTimeoutMillis() {
+    return webhookRequestTimeoutMillis;
+  }
+
+  public void setWebhookRequestTimeoutMillis(long webhookRequestTimeoutMillis) {
+    this.webhookRequestTimeoutMillis = webhookRequestTimeoutMillis;
+  }
+
+  public String getWebhookSpillDirectory() {
+    return webhookSpillDirectory;
+  }
+
+  public void setWebhookSpillDirectory(String webhookSpillDirectory) {
+    this.webhookSpillDirectory = webhookSpillDirectory;
+  }
+
+  public long getWebhookMaxSpillBytes() {
+    return webhookMaxSpillBytes;
+  }
+
+  public void setWebhookMaxSpillBytes(long webhookMaxSpillBytes) {
+    this.webhookMaxSpillBytes = webhookMaxSpillBytes;
+  }
+
+  public int getEventLogSize() {
+    return eventLogSize;
+  }
+
+  public void setEventLogSize(int eventLogSize) {
+    this.eventLogSize = eventLogSize;
+  }
+
+  public int getMaxEventStreams() {
+    return maxEventStreams;
+  }
+
+  public void setMaxEventStreams(int maxEventStreams) {
+    this.maxEventStreams = maxEventStreams;
+  }
+
+  public long getEventStreamKeepAliveSeconds() {
+    return eventStreamKeepAliveSeconds;
+  }
+
+  public void setEventStreamKeepAliveSeconds(long eventStreamKeepAliveSeconds) {
+    this.eventStreamKeepAliveSeconds = eventStreamKeepAliveSeconds;
+  }
+
   public long getSaveStateEverySeconds() {
     return saveStateEverySeconds;
   }
@@ -9,12 +9,13 @@ import org.apache.zookeeper.KeeperException.NodeExistsException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Optional;
 import com.google.common.base.Throwables;
 import com.google.common.collect.Lists;
+import com.hubspot.singularity.SingularityEvent;
 import com.hubspot.singularity.SingularityMachineAbstraction;
 import com.hubspot.singularity.SingularityMachineAbstraction.SingularityMachineState;
+import com.hubspot.singularity.hooks.SingularityEventLog;
 
 public abstract class AbstractMachineManager<T extends SingularityMachineAbstraction> extends CuratorManager {
 
@@ -24,12 +25,14 @@ public abstract class AbstractMachineManager<T extends SingularityMachineAbstrac
   private static final String DECOMISSIONING_PATH = "decomissioning";
   private static final String DEAD_PATH = "dead";
   
-  private final ObjectMapper objectMapper;
+  private final ZooKeeperCodec codec;
+  private final SingularityEventLog eventLog;
   
-  public AbstractMachineManager(CuratorFramework curator, ObjectMapper objectMapper) {
+  public AbstractMachineManager(CuratorFramework curator, ZooKeeperCodec codec, SingularityEventLog eventLog) {
     super(curator);
     
-    this.objectMapper = objectMapper;
+    this.codec = codec;
+    this.eventLog = eventLog;
   }
 
   public abstract String getRoot();
@@ -52,7 +55,7 @@ public abstract class AbstractMachineManager<T extends SingularityMachineAbstrac
     return ZKPaths.makePath(getDeadRoot(), objectId);
   }
   
-  protected String getDecomissioningRoot() {
+  public String getDecomissioningRoot() {
     return ZKPaths.makePath(getRoot(), DECOMISSIONING_PATH);
   }
   
@@ -162,25 +165,54 @@ public abstract class AbstractMachineManager<T extends SingularityMachineAbstrac
       LOG.warn(String.format("Marking an object %s as dead - but it wasn't active", objectId));
       return;
     }
+    
+    activeObject.get().setState(SingularityMachineState.DEAD);
+    
+    if (move(getActivePath(objectId), getDeadRoot(), getDeadPath(objectId), codec.encode(activeObject.get()))) {
+      eventLog.append(SingularityEvent.machineUpdate(getRoot(), objectId, SingularityMachineState.DEAD));
+      return;
+    }
  
     if (delete(getActivePath(objectId)) != DeleteResult.DELETED) {
       LOG.warn(String.format("Deleting active object at %s failed", getActivePath(objectId)));
     }
-  
-    activeObject.get().setState(SingularityMachineState.DEAD);
     
-    if (create(getDeadPath(objectId), Optional.of(activeObject.get().getAsBytes(objectMapper))) != CreateResult.CREATED) {
+    if (create(getDeadPath(objectId), Optional.of(codec.encode(activeObject.get()))) != CreateResult.CREATED) {
       LOG.warn(String.format("Creating dead object at %s failed", getDeadPath(objectId)));
+      return;
+    }
+    
+    eventLog.append(SingularityEvent.machineUpdate(getRoot(), objectId, SingularityMachineState.DEAD));
+  }
+  
+  /**
+   * Deletes from and creates to in a single transaction, returning false if the transaction failed and nothing was changed.
+   */
+  private boolean move(String from, String toRoot, String to, byte[] data) {
+    try {
+      ensurePath(toRoot);
+      
+      curator.inTransaction()
+        .delete().forPath(from).and()
+        .create().forPath(to, data).and()
+        .commit();
+      
+      return true;
+    } catch (Throwable t) {
+      LOG.warn(String.format("Couldn't move %s to %s in one transaction, falling back to separate operations", from, to), t);
+      return false;
     }
   }
   
   private void mark(T object, String path, SingularityMachineState state) {
     object.setState(state);
     
-    final byte[] data = object.getAsBytes(objectMapper);
+    final byte[] data = codec.encode(object);
     
     try {
       curator.setData().forPath(path, data);
+      
+      eventLog.append(SingularityEvent.machineUpdate(getRoot(), object.getId(), state));
     } catch (NoNodeException nne) {
       LOG.warn(String.format("Unexpected no node exception while storing decomissioned state for %s on path %s", object, path));
     } catch (Exception e) {
@@ -218,7 +250,14 @@ public abstract class AbstractMachineManager<T extends SingularityMachineAbstrac
     
     object.get().setState(SingularityMachineState.DECOMISSIONING);
     
-    create(getDecomissioningPath(objectId), Optional.of(object.get().getAsBytes(objectMapper)));
+    if (move(getActivePath(objectId), getDecomissioningRoot(), getDecomissioningPath(objectId), codec.encode(object.get()))) {
+      eventLog.append(SingularityEvent.machineUpdate(getRoot(), objectId, SingularityMachineState.DECOMISSIONING));
+      return DecomissionResult.SUCCESS_DECOMISSIONING;
+    }
+    
+    if (create(getDecomissioningPath(objectId), Optional.of(codec.encode(object.get()))) == CreateResult.CREATED) {
+      eventLog.append(SingularityEvent.machineUpdate(getRoot(), objectId, SingularityMachineState.DECOMISSIONING));
+    }
     
     delete(getActivePath(objectId));
     
@@ -252,7 +291,9 @@ public abstract class AbstractMachineManager<T extends SingularityMachineAbstrac
     final String path = getActivePath(object.getId());
     
     try {
-      curator.create().creatingParentsIfNeeded().forPath(path, object.getAsBytes(objectMapper));
+      curator.create().creatingParentsIfNeeded().forPath(path, codec.encode(object));
+      
+      eventLog.append(SingularityEvent.machineUpdate(getRoot(), object.getId(), object.getStateEnum()));
     } catch (NodeExistsException nee) {
       LOG.warn(String.format("Node already existed for object %s at path %s", object, path));
     } catch (Exception e) {
@@ -0,0 +1,353 @@
+package com.hubspot.singularity.data;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.PathChildrenCache;
+import org.apache.curator.framework.recipes.cache.PathChildrenCache.StartMode;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheEvent;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheListener;
+import org.apache.curator.utils.ZKPaths;
+import org.apache.zookeeper.KeeperException.NoNodeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.io.Closeables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import com.hubspot.singularity.SingularityTask;
+import com.hubspot.singularity.SingularityTaskSummary;
+import com.hubspot.singularity.config.SingularityConfiguration;
+
+/**
+ * Mirrors the active task summary nodes in memory. Kept up to date by a PathChildrenCache on each active bucket and by writes made through TaskManager,
+ * and periodically compared against ZK. Active task nodes are only ever created and deleted, so comparing the set of ids is enough to find drift.
+ * Full tasks are only cached once they have been launched through or loaded by TaskManager.
+ */
+public class ActiveTaskCache extends CuratorManager implements PathChildrenCacheListener {
+
+  private final static Logger LOG = LoggerFactory.getLogger(ActiveTaskCache.class);
+
+  private final static String SUMMARY_FIELD = "slaveId";
+
+  private final ZooKeeperCodec codec;
+  private final SingularityConfiguration configuration;
+  private final ZooKeeperBuckets buckets;
+  private final Map<String, PathChildrenCache> pathChildrenCaches;
+  private final AtomicInteger uninitializedBuckets;
+  private final ConcurrentMap<String, SingularityTaskSummary> summaries;
+  private final ConcurrentMap<String, SingularityTask> tasks;
+  private final ActiveTaskIndex index;
+  private final ScheduledExecutorService executorService;
+  private final Counter inconsistencies;
+
+  private volatile boolean initialized;
+
+  @Inject
+  public ActiveTaskCache(CuratorFramework curator, ZooKeeperCodec codec, ZooKeeperBuckets buckets, SingularityConfiguration configuration, MetricRegistry metrics) {
+    super(curator);
+    this.codec = codec;
+    this.buckets = buckets;
+    this.configuration = configuration;
+
+    this.summaries = new ConcurrentHashMap<>();
+    this.tasks = new ConcurrentHashMap<>();
+    this.index = new ActiveTaskIndex();
+    this.pathChildrenCaches = Maps.newHashMap();
+    this.uninitializedBuckets = new AtomicInteger(buckets.getNumBuckets());
+    this.executorService = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setDaemon(true).setNameFormat("ActiveTaskCache-%d").build());
+
+    this.inconsistencies = metrics.counter(MetricRegistry.name(ActiveTaskCache.class, "inconsistencies"));
+
+    metrics.register(MetricRegistry.name(ActiveTaskCache.class, "size"), new Gauge<Integer>() {
+
+      @Override
+      public Integer getValue() {
+        return summaries.size();
+      }
+
+    });
+
+    for (String bucketPath : buckets.getBucketPaths(TaskManager.ACTIVE_PATH_ROOT)) {
+      final PathChildrenCache pathChildrenCache = new PathChildrenCache(curator, bucketPath, true);
+      
+      pathChildrenCache.getListenable().addListener(this);
+      pathChildrenCaches.put(bucketPath, pathChildrenCache);
+    }
+  }
+
+  public void start() {
+    LOG.info(String.format("Starting active task cache, checking consistency every %s seconds", configuration.getActiveTaskCacheCheckEverySeconds()));
+
+    try {
+      for (PathChildrenCache pathChildrenCache : pathChildrenCaches.values()) {
+        pathChildrenCache.start(StartMode.POST_INITIALIZED_EVENT);
+      }
+    } catch (Exception e) {
+      throw Throwables.propagate(e);
+    }
+
+    executorService.scheduleWithFixedDelay(new Runnable() {
+
+      @Override
+      public void run() {
+        if (!initialized) {
+          return;
+        }
+
+        try {
+          resync();
+        } catch (Throwable t) {
+          LOG.error("While checking active task cache consistency", t);
+        }
+      }
+
+    }, configuration.getActiveTaskCacheCheckEverySeconds(), configuration.getActiveTaskCacheCheckEverySeconds(), TimeUnit.SECONDS);
+  }
+
+  public void stop() {
+    initialized = false;
+
+    executorService.shutdownNow();
+
+    try {
+      for (PathChildrenCache pathChildrenCache : pathChildrenCaches.values()) {
+        Closeables.close(pathChildrenCache, true);
+      }
+    } catch (Exception e) {
+      LOG.warn("While closing active task cache", e);
+    }
+  }
+
+  public boolean isInitialized() {
+    return initialized;
+  }
+
+  public int getNumTasks() {
+    return summaries.size();
+  }
+
+  public Set<String> getTaskIds() {
+    return summaries.keySet();
+  }
+
+  public Collection<SingularityTaskSummary> getSummaries() {
+    return summaries.values();
+  }
+
+  public Optional<SingularityTaskSummary> getSummary(String taskId) {
+    return Optional.fromNullable(summaries.get(taskId));
+  }
+
+  public ActiveTaskIndex getIndex() {
+    return index;
+  }
+
+  /**
+   * Returns the full task if it has already been loaded; absent doesn't mean the task isn't active.
+   */
+  public Optional<SingularityTask> getTask(String taskId) {
+    return Optional.fromNullable(tasks.get(taskId));
+  }
+
+  public void put(SingularityTask task) {
+    final String taskId = task.getTaskId().toString();
+
+    putSummary(taskId, SingularityTaskSummary.fromTask(task));
+    tasks.put(taskId, task);
+  }
+
+  /**
+   * Caches a full task loaded from ZK, as long as it is still active.
+   */
+  public void putLoaded(SingularityTask task) {
+    final String taskId = task.getTaskId().toString();
+
+    if (summaries.containsKey(taskId)) {
+      tasks.put(taskId, task);
+
+      if (!summaries.containsKey(taskId)) {
+        tasks.remove(taskId);
+      }
+    }
+  }
+
+  public void remove(String taskId) {
+    synchronized (index) {
+      final SingularityTaskSummary previous = summaries.remove(taskId);
+
+      if (previous != null) {
+        index.remove(previous);
+      }
+    }
+
+    tasks.remove(taskId);
+  }
+
+  private void putSummary(String taskId, SingularityTaskSummary summary) {
+    synchronized (index) {
+      final SingularityTaskSummary previous = summaries.put(taskId, summary);
+
+      if (previous != null) {
+        index.remove(previous);
+      }
+
+      index.add(summary);
+    }
+  }
+
+  @Override
+  public void childEvent(CuratorFramework client, PathChildrenCacheEvent event) throws Exception {
+    switch (event.getType()) {
+      case CHILD_ADDED:
+      case CHILD_UPDATED:
+        cacheSummary(event.getData());
+        break;
+      case CHILD_REMOVED:
+        remove(ZKPaths.getNodeFromPath(event.getData().getPath()));
+        break;
+      case INITIALIZED:
+        if (uninitializedBuckets.decrementAndGet() == 0) {
+          LOG.info(String.format("Active task cache initialized with %s tasks", summaries.size()));
+          initialized = true;
+        }
+        break;
+      case CONNECTION_SUSPENDED:
+      case CONNECTION_LOST:
+        if (initialized) {
+          LOG.warn(String.format("Active task cache lost its connection (%s), reading from ZK until it is resynced", event.getType()));
+          initialized = false;
+        }
+        break;
+      case CONNECTION_RECONNECTED:
+        // every bucket's cache sees the reconnect, only the first needs to resync
+        if (uninitializedBuckets.get() == 0) {
+          synchronized (this) {
+            if (!initialized) {
+              resync();
+              initialized = true;
+            }
+          }
+        }
+        break;
+      default:
+        break;
+    }
+  }
+
+  /**
+   * An active node holding the full task is decoded anyway, so the full task is cached along with its summary.
+   */
+  private void cacheSummary(ChildData data) {
+    final String taskId = ZKPaths.getNodeFromPath(data.getPath());
+
+    try {
+      final JsonNode activeNode = decodeActiveNode(data.getData());
+
+      if (holdsSummary(activeNode)) {
+        putSummary(taskId, codec.convert(activeNode, SingularityTaskSummary.class));
+      } else {
+        final SingularityTask task = codec.convert(activeNode, SingularityTask.class);
+
+        putSummary(taskId, SingularityTaskSummary.fromTask(task));
+        tasks.put(taskId, task);
+      }
+    } catch (Exception e) {
+      LOG.warn(String.format("Couldn't decode active task %s", taskId), e);
+    }
+
+    pathChildrenCaches.get(ZKPaths.getPathAndNode(data.getPath()).getPath()).clearDataBytes(data.getPath());
+  }
+
+  /**
+   * Active nodes hold a summary when written with zooKeeperActiveTaskSummaries, and otherwise (including everything written before summaries
+   * existed) the full task. The node is parsed once, and a summary is told apart by its slaveId, which a full task doesn't have at the top level.
+   */
+  JsonNode decodeActiveNode(byte[] data) throws IOException {
+    return codec.decodeTree(data);
+  }
+
+  boolean holdsSummary(JsonNode activeNode) {
+    return activeNode.hasNonNull(SUMMARY_FIELD);
+  }
+
+  /**
+   * The summary is derived from the full task when that's what the active node holds.
+   */
+  SingularityTaskSummary decodeSummary(byte[] data) throws Exception {
+    final JsonNode activeNode = decodeActiveNode(data);
+
+    if (holdsSummary(activeNode)) {
+      return codec.convert(activeNode, SingularityTaskSummary.class);
+    }
+
+    return SingularityTaskSummary.fromTask(codec.convert(activeNode, SingularityTask.class));
+  }
+
+  /**
+   * Brings the cache in line with ZK, returning the number of tasks that were added or removed.
+   */
+  public synchronized int resync() {
+    final long start = System.currentTimeMillis();
+
+    final List<String> children = buckets.getBucketedChildren(TaskManager.ACTIVE_PATH_ROOT);
+    final Set<String> live = Sets.newHashSet(children);
+
+    int fixed = 0;
+
+    for (String taskId : ImmutableList.copyOf(summaries.keySet())) {
+      if (!live.contains(taskId) && !exists(TaskManager.getActivePath(buckets, taskId))) {
+        remove(taskId);
+        fixed++;
+      }
+    }
+
+    for (String taskId : children) {
+      if (summaries.containsKey(taskId)) {
+        continue;
+      }
+
+      try {
+        byte[] data = curator.getData().forPath(TaskManager.getActivePath(buckets, taskId));
+
+        putSummary(taskId, decodeSummary(data));
+        fixed++;
+      } catch (NoNodeException nne) {
+        LOG.debug(String.format("Active task %s was removed during resync", taskId));
+      } catch (Exception e) {
+        throw Throwables.propagate(e);
+      }
+    }
+
+    if (fixed > 0) {
+      inconsistencies.inc(fixed);
+
+      LOG.warn(String.format("Active task cache was out of sync with ZK by %s task(s), resynced %s tasks in %sms", fixed, summaries.size(), System.currentTimeMillis() - start));
+    } else {
+      LOG.debug(String.format("Active task cache consistent with ZK (%s tasks) in %sms", summaries.size(), System.currentTimeMillis() - start));
+    }
+
+    return fixed;
+  }
+
+}
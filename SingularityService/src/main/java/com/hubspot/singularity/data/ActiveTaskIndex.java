@@ -0,0 +1,63 @@
+package com.hubspot.singularity.data;
+
+import java.util.List;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.SetMultimap;
+import com.hubspot.singularity.SingularityTaskId;
+import com.hubspot.singularity.SingularityTaskSummary;
+
+/**
+ * Active task ids by request, host, rack and slave. Maintained by ActiveTaskCache alongside its summaries, so lookups cost the number of matching tasks
+ * rather than the number of active tasks.
+ */
+public class ActiveTaskIndex {
+
+  private final SetMultimap<String, SingularityTaskId> byRequest;
+  private final SetMultimap<String, SingularityTaskId> byHost;
+  private final SetMultimap<String, SingularityTaskId> byRack;
+  private final SetMultimap<String, SingularityTaskId> bySlave;
+
+  public ActiveTaskIndex() {
+    this.byRequest = HashMultimap.create();
+    this.byHost = HashMultimap.create();
+    this.byRack = HashMultimap.create();
+    this.bySlave = HashMultimap.create();
+  }
+
+  synchronized void add(SingularityTaskSummary summary) {
+    final SingularityTaskId taskId = summary.getTaskId();
+
+    byRequest.put(taskId.getRequestId(), taskId);
+    byHost.put(taskId.getHost(), taskId);
+    byRack.put(taskId.getRackId(), taskId);
+    bySlave.put(summary.getSlaveId(), taskId);
+  }
+
+  synchronized void remove(SingularityTaskSummary summary) {
+    final SingularityTaskId taskId = summary.getTaskId();
+
+    byRequest.remove(taskId.getRequestId(), taskId);
+    byHost.remove(taskId.getHost(), taskId);
+    byRack.remove(taskId.getRackId(), taskId);
+    bySlave.remove(summary.getSlaveId(), taskId);
+  }
+
+  public synchronized List<SingularityTaskId> getByRequest(String requestId) {
+    return ImmutableList.copyOf(byRequest.get(requestId));
+  }
+
+  public synchronized List<SingularityTaskId> getByHost(String host) {
+    return ImmutableList.copyOf(byHost.get(host));
+  }
+
+  public synchronized List<SingularityTaskId> getByRack(String rackId) {
+    return ImmutableList.copyOf(byRack.get(rackId));
+  }
+
+  public synchronized List<SingularityTaskId> getBySlave(String slaveId) {
+    return ImmutableList.copyOf(bySlave.get(slaveId));
+  }
+
+}
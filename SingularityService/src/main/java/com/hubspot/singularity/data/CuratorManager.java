@@ -1,9 +1,22 @@
 package com.hubspot.singularity.data;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.BackgroundCallback;
+import org.apache.curator.framework.api.CuratorEvent;
+import org.apache.curator.framework.api.transaction.CuratorTransaction;
+import org.apache.curator.framework.api.transaction.CuratorTransactionFinal;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.KeeperException.Code;
 import org.apache.zookeeper.KeeperException.NoNodeException;
 import org.apache.zookeeper.KeeperException.NodeExistsException;
 import org.apache.zookeeper.data.Stat;
@@ -12,15 +25,39 @@ import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Optional;
 import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
 
 public abstract class CuratorManager {
 
   private final static Logger LOG = LoggerFactory.getLogger(CuratorManager.class);
   
+  protected final static int MAX_TRANSACTION_OPS = 500;
+  
+  private final static long BACKGROUND_READ_TIMEOUT_SECONDS = 30;
+  
   protected final CuratorFramework curator;
+  
+  private final Set<String> ensuredPaths;
 
   public CuratorManager(CuratorFramework curator) {
     this.curator = curator;
+    this.ensuredPaths = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+  }
+  
+  /**
+   * Transactions can't create parents, so their roots have to exist up front.
+   */
+  protected void ensurePath(String path) {
+    if (ensuredPaths.contains(path)) {
+      return;
+    }
+    
+    try {
+      curator.newNamespaceAwareEnsurePath(path).ensure(curator.getZookeeperClient());
+      ensuredPaths.add(path);
+    } catch (Throwable t) {
+      throw Throwables.propagate(t);
+    }
   }
     
   protected int getNumChildren(String path) {
@@ -59,6 +96,57 @@ public abstract class CuratorManager {
     }
   }
   
+  /**
+   * Reads every path in one pipelined pass - all reads are issued before any is waited on. Paths that don't exist are left out of the result.
+   */
+  protected Map<String, byte[]> getDataInBackground(Collection<String> paths) {
+    final Map<String, byte[]> found = new ConcurrentHashMap<>();
+    
+    if (paths.isEmpty()) {
+      return found;
+    }
+    
+    final CountDownLatch remaining = new CountDownLatch(paths.size());
+    final AtomicReference<KeeperException> failure = new AtomicReference<>();
+    
+    final BackgroundCallback callback = new BackgroundCallback() {
+      
+      @Override
+      public void processResult(CuratorFramework client, CuratorEvent event) throws Exception {
+        final String path = (String) event.getContext();
+        
+        try {
+          if (event.getResultCode() == Code.OK.intValue()) {
+            found.put(path, event.getData());
+          } else if (event.getResultCode() != Code.NONODE.intValue()) {
+            failure.compareAndSet(null, KeeperException.create(Code.get(event.getResultCode()), path));
+          }
+        } finally {
+          remaining.countDown();
+        }
+      }
+      
+    };
+    
+    try {
+      for (String path : paths) {
+        curator.getData().inBackground(callback, path).forPath(path);
+      }
+      
+      if (!remaining.await(BACKGROUND_READ_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+        throw new IllegalStateException(String.format("Timed out reading %s paths after %s seconds", paths.size(), BACKGROUND_READ_TIMEOUT_SECONDS));
+      }
+    } catch (Throwable t) {
+      throw Throwables.propagate(t);
+    }
+    
+    if (failure.get() != null) {
+      throw Throwables.propagate(failure.get());
+    }
+    
+    return found;
+  }
+  
   public enum DeleteResult {
     DELETED, DIDNT_EXIST;
   }
@@ -98,5 +186,31 @@ public abstract class CuratorManager {
     }
   }
   
+  /**
+   * Deletes the paths in as few transactions as possible. A transaction fails as a whole if any of its paths is missing, in which case its paths
+   * are deleted one at a time.
+   */
+  protected void deleteInTransactions(List<String> paths) {
+    for (List<String> partition : Lists.partition(paths, MAX_TRANSACTION_OPS)) {
+      try {
+        CuratorTransaction transaction = curator.inTransaction();
+        CuratorTransactionFinal operations = null;
+        
+        for (String path : partition) {
+          operations = transaction.delete().forPath(path).and();
+          transaction = operations;
+        }
+        
+        operations.commit();
+        continue;
+      } catch (Throwable t) {
+        LOG.warn(String.format("Couldn't delete %s nodes in one transaction, deleting individually", partition.size()), t);
+      }
+      
+      for (String path : partition) {
+        delete(path);
+      }
+    }
+  }
   
 }
@@ -2,27 +2,27 @@ package com.hubspot.singularity.data;
 
 import org.apache.curator.framework.CuratorFramework;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Throwables;
 import com.google.inject.Inject;
 import com.hubspot.singularity.SingularityRack;
+import com.hubspot.singularity.hooks.SingularityEventLog;
 
 public class RackManager extends AbstractMachineManager<SingularityRack> {
   
   private static final String RACK_ROOT = "racks";
 
-  private final ObjectMapper objectMapper;
+  private final ZooKeeperCodec codec;
   
   @Inject
-  public RackManager(CuratorFramework curator, ObjectMapper objectMapper) {
-    super(curator, objectMapper);
-    this.objectMapper = objectMapper;
+  public RackManager(CuratorFramework curator, ZooKeeperCodec codec, SingularityEventLog eventLog) {
+    super(curator, codec, eventLog);
+    this.codec = codec;
   }
   
   @Override
   public SingularityRack fromBytes(byte[] bytes) {
     try {
-      return SingularityRack.fromBytes(bytes, objectMapper);
+      return codec.decode(bytes, SingularityRack.class);
     } catch (Exception e) {
       throw Throwables.propagate(e);
     }
@@ -0,0 +1,177 @@
+package com.hubspot.singularity.data;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.cache.PathChildrenCache;
+import org.apache.curator.framework.recipes.cache.PathChildrenCache.StartMode;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheEvent;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheListener;
+import org.apache.curator.utils.ZKPaths;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+import com.google.common.io.Closeables;
+import com.google.inject.Inject;
+import com.hubspot.singularity.SingularityRequest;
+
+/**
+ * Keeps parsed requests keyed by request id and node version. A PathChildrenCache on the active request root (without node data) invalidates
+ * entries when a request changes or is removed. Loads that race with an invalidation are not cached.
+ */
+public class RequestCache implements PathChildrenCacheListener {
+
+  private final static Logger LOG = LoggerFactory.getLogger(RequestCache.class);
+
+  private final PathChildrenCache pathChildrenCache;
+  private final ConcurrentMap<String, CachedRequest> requests;
+  private final AtomicLong generation;
+
+  private final Meter hits;
+  private final Meter misses;
+
+  private volatile boolean initialized;
+
+  @Inject
+  public RequestCache(CuratorFramework curator, MetricRegistry metrics) {
+    this.pathChildrenCache = new PathChildrenCache(curator, RequestManager.ACTIVE_PATH_ROOT, false);
+    this.requests = new ConcurrentHashMap<>();
+    this.generation = new AtomicLong();
+
+    this.hits = metrics.meter(MetricRegistry.name(RequestCache.class, "hits"));
+    this.misses = metrics.meter(MetricRegistry.name(RequestCache.class, "misses"));
+
+    metrics.register(MetricRegistry.name(RequestCache.class, "size"), new Gauge<Integer>() {
+
+      @Override
+      public Integer getValue() {
+        return requests.size();
+      }
+
+    });
+
+    pathChildrenCache.getListenable().addListener(this);
+  }
+
+  private static class CachedRequest {
+
+    private final int version;
+    private final SingularityRequest request;
+
+    private CachedRequest(int version, SingularityRequest request) {
+      this.version = version;
+      this.request = request;
+    }
+
+  }
+
+  public void start() {
+    LOG.info("Starting request cache");
+
+    try {
+      pathChildrenCache.start(StartMode.POST_INITIALIZED_EVENT);
+    } catch (Exception e) {
+      throw Throwables.propagate(e);
+    }
+  }
+
+  public void stop() {
+    initialized = false;
+
+    try {
+      Closeables.close(pathChildrenCache, true);
+    } catch (Exception e) {
+      LOG.warn("While closing request cache", e);
+    }
+  }
+
+  public boolean isInitialized() {
+    return initialized;
+  }
+
+  public Optional<SingularityRequest> get(String requestId) {
+    if (!initialized) {
+      return Optional.absent();
+    }
+
+    final CachedRequest cached = requests.get(requestId);
+
+    if (cached == null) {
+      misses.mark();
+      return Optional.absent();
+    }
+
+    hits.mark();
+
+    return Optional.of(cached.request);
+  }
+
+  /**
+   * Must be read before loading a request from ZK, and passed back to put.
+   */
+  public long getGeneration() {
+    return generation.get();
+  }
+
+  public void put(String requestId, int version, SingularityRequest request, long loadedAtGeneration) {
+    if (!initialized) {
+      return;
+    }
+
+    requests.put(requestId, new CachedRequest(version, request));
+
+    // an invalidation may have happened while this request was loading
+    if (generation.get() != loadedAtGeneration) {
+      requests.remove(requestId);
+    }
+  }
+
+  public void invalidate(String requestId) {
+    generation.incrementAndGet();
+    requests.remove(requestId);
+  }
+
+  @Override
+  public void childEvent(CuratorFramework client, PathChildrenCacheEvent event) throws Exception {
+    switch (event.getType()) {
+      case CHILD_ADDED:
+      case CHILD_UPDATED:
+        final String requestId = ZKPaths.getNodeFromPath(event.getData().getPath());
+        final CachedRequest cached = requests.get(requestId);
+
+        if (cached == null || event.getData().getStat() == null || cached.version != event.getData().getStat().getVersion()) {
+          invalidate(requestId);
+        }
+        break;
+      case CHILD_REMOVED:
+        invalidate(ZKPaths.getNodeFromPath(event.getData().getPath()));
+        break;
+      case INITIALIZED:
+        LOG.info("Request cache initialized");
+        initialized = true;
+        break;
+      case CONNECTION_SUSPENDED:
+      case CONNECTION_LOST:
+        LOG.warn(String.format("Request cache lost its connection (%s), clearing", event.getType()));
+        initialized = false;
+        generation.incrementAndGet();
+        requests.clear();
+        break;
+      case CONNECTION_RECONNECTED:
+        generation.incrementAndGet();
+        requests.clear();
+        initialized = true;
+        break;
+      default:
+        break;
+    }
+  }
+
+}
@@ -6,10 +6,11 @@ import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.utils.ZKPaths;
 import org.apache.zookeeper.KeeperException.NoNodeException;
 import org.apache.zookeeper.KeeperException.NodeExistsException;
+import org.apache.zookeeper.data.Stat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Function;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
@@ -24,23 +25,27 @@ public class RequestManager extends CuratorManager {
   
   private final static Logger LOG = LoggerFactory.getLogger(RequestManager.class);
   
-  private final ObjectMapper objectMapper;
+  private final ZooKeeperCodec codec;
+  private final ZooKeeperBuckets buckets;
+  private final RequestCache requestCache;
 
   private final static String REQUEST_ROOT = "/requests";
     
-  private final static String ACTIVE_PATH_ROOT = REQUEST_ROOT + "/active";
+  final static String ACTIVE_PATH_ROOT = REQUEST_ROOT + "/active";
   private final static String ACTIVE_PATH_FORMAT = ACTIVE_PATH_ROOT + "/%s";
 
-  private final static String PENDING_PATH_ROOT = REQUEST_ROOT + "/pending";
-  private final static String PENDING_PATH_FORMAT = PENDING_PATH_ROOT + "/%s";
+  private final static String LEGACY_PENDING_PATH_ROOT = REQUEST_ROOT + "/pending";
+  private final static String PENDING_PATH_ROOT = REQUEST_ROOT + "/bucketed/pending";
   
-  private final static String CLEANUP_PATH_ROOT = REQUEST_ROOT +  "/cleanup";
+  public final static String CLEANUP_PATH_ROOT = REQUEST_ROOT +  "/cleanup";
   private final static String CLEANUP_PATH_FORMAT = CLEANUP_PATH_ROOT + "/%s";
   
   @Inject
-  public RequestManager(CuratorFramework curator, ObjectMapper objectMapper) {
+  public RequestManager(CuratorFramework curator, ZooKeeperCodec codec, ZooKeeperBuckets buckets, RequestCache requestCache) {
     super(curator);
-    this.objectMapper = objectMapper;
+    this.codec = codec;
+    this.buckets = buckets;
+    this.requestCache = requestCache;
   }
  
   private String getRequestPath(String name) {
@@ -48,7 +53,7 @@ public class RequestManager extends CuratorManager {
   }
   
   private String getPendingPath(String name) {
-    return String.format(PENDING_PATH_FORMAT, name);
+    return buckets.getPath(PENDING_PATH_ROOT, SingularityPendingRequestId.fromString(name).getRequestId(), name);
   }
   
   private String getCleanupPath(String name) {
@@ -56,7 +61,7 @@ public class RequestManager extends CuratorManager {
   }
   
   public int getSizeOfPendingQueue() {
-    return getNumChildren(PENDING_PATH_ROOT);
+    return buckets.getNumBucketedChildren(PENDING_PATH_ROOT);
   }
   
   public int getSizeOfCleanupQueue() {
@@ -71,6 +76,16 @@ public class RequestManager extends CuratorManager {
     delete(getPendingPath(pendingRequestId));
   }
   
+  public void deletePendingRequests(List<SingularityPendingRequestId> pendingRequestIds) {
+    final List<String> paths = Lists.newArrayListWithCapacity(pendingRequestIds.size());
+    
+    for (SingularityPendingRequestId pendingRequestId : pendingRequestIds) {
+      paths.add(getPendingPath(pendingRequestId.toString()));
+    }
+    
+    deleteInTransactions(paths);
+  }
+  
   public void deleteCleanRequest(String requestId) {
     delete(getCleanupPath(requestId));
   }
@@ -83,6 +98,20 @@ public class RequestManager extends CuratorManager {
     create(getPendingPath(pendingRequestId.toString()));
   }
   
+  /**
+   * Moves pending requests written by versions without buckets into the bucketed layout.
+   */
+  public static int migrateToBuckets(ZooKeeperBuckets buckets) {
+    return buckets.migrate(LEGACY_PENDING_PATH_ROOT, PENDING_PATH_ROOT, new Function<String, String>() {
+      
+      @Override
+      public String apply(String pendingRequestId) {
+        return SingularityPendingRequestId.fromString(pendingRequestId).getRequestId();
+      }
+      
+    });
+  }
+  
   public enum PersistResult {
     CREATED, UPDATED;
   }
@@ -99,7 +128,7 @@ public class RequestManager extends CuratorManager {
     Preconditions.checkState(curator.checkExists().forPath(getCleanupPath(request.getId())) == null, "A cleanup request exists for %s", request.getId());
     
     final String requestPath = getRequestPath(request.getId());
-    final byte[] bytes = request.getAsBytes(objectMapper);
+    final byte[] bytes = codec.encode(request);
     
     try {
       curator.create().creatingParentsIfNeeded().forPath(requestPath, bytes);
@@ -107,6 +136,8 @@ public class RequestManager extends CuratorManager {
     } catch (NodeExistsException nee) {
       curator.setData().forPath(requestPath, bytes);
       return PersistResult.UPDATED;
+    } finally {
+      requestCache.invalidate(request.getId());
     }
   }
   
@@ -115,7 +146,7 @@ public class RequestManager extends CuratorManager {
   }
   
   public List<SingularityPendingRequestId> getPendingRequestIds() {
-    List<String> pendingStrings = getChildren(PENDING_PATH_ROOT);
+    List<String> pendingStrings = buckets.getBucketedChildren(PENDING_PATH_ROOT);
     List<SingularityPendingRequestId> pendingRequestIds = Lists.newArrayListWithCapacity(pendingStrings.size());
     
     for (String pendingString : pendingStrings) {
@@ -161,8 +192,20 @@ public class RequestManager extends CuratorManager {
   }
 
   public Optional<SingularityRequest> fetchRequest(String requestId) {
+    final Optional<SingularityRequest> cached = requestCache.get(requestId);
+    
+    if (cached.isPresent()) {
+      return cached;
+    }
+    
+    final long generation = requestCache.getGeneration();
+    final Stat stat = new Stat();
+    
     try {
-      SingularityRequest request = SingularityRequest.fromBytes(curator.getData().forPath(ZKPaths.makePath(ACTIVE_PATH_ROOT, requestId)), objectMapper);
+      SingularityRequest request = codec.decode(curator.getData().storingStatIn(stat).forPath(ZKPaths.makePath(ACTIVE_PATH_ROOT, requestId)), SingularityRequest.class);
+      
+      requestCache.put(requestId, stat.getVersion(), request, generation);
+      
       return Optional.of(request);
     } catch (NoNodeException nee) {
       return Optional.absent();
@@ -179,6 +222,8 @@ public class RequestManager extends CuratorManager {
         addToCleanupQueue(requestId);
         
         curator.delete().forPath(getRequestPath(requestId));
+        
+        requestCache.invalidate(requestId);
       } catch (NoNodeException nee) {
         LOG.warn(String.format("Couldn't find request at %s to delete", requestId));
       } catch (Throwable t) {
@@ -0,0 +1,303 @@
+package com.hubspot.singularity.data;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.cache.PathChildrenCache;
+import org.apache.curator.framework.recipes.cache.PathChildrenCache.StartMode;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheEvent;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheListener;
+import org.apache.curator.utils.ZKPaths;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.io.Closeables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import com.hubspot.singularity.SingularityPendingTaskId;
+
+/**
+ * Keeps the scheduled task ids ordered by nextRunAt, so that finding due tasks doesn't depend on how many tasks are scheduled for later.
+ * Kept up to date by a PathChildrenCache (without node data) on each scheduled bucket and by writes made through TaskManager.
+ * A timer armed for the earliest nextRunAt moves tasks into the ready set as they come due, so each task is promoted exactly once, and tells the
+ * ready listeners so that the scheduler can ask for offers rather than wait for the next ones.
+ */
+public class ScheduledTaskCache implements PathChildrenCacheListener {
+
+  private final static Logger LOG = LoggerFactory.getLogger(ScheduledTaskCache.class);
+
+  private final ZooKeeperBuckets buckets;
+  private final List<PathChildrenCache> pathChildrenCaches;
+  private final NavigableSet<SingularityPendingTaskId> scheduled;
+  private final NavigableSet<SingularityPendingTaskId> ready;
+  private final AtomicInteger uninitializedBuckets;
+  private final ScheduledExecutorService executorService;
+  private final Histogram fireToLaunchMillis;
+  private final List<Runnable> readyListeners;
+
+  private ScheduledFuture<?> timer;
+  private long timerFiresAt;
+
+  private volatile boolean initialized;
+
+  @Inject
+  public ScheduledTaskCache(CuratorFramework curator, ZooKeeperBuckets buckets, MetricRegistry metrics) {
+    this.buckets = buckets;
+    this.scheduled = new ConcurrentSkipListSet<>();
+    this.ready = new ConcurrentSkipListSet<>();
+    this.executorService = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setDaemon(true).setNameFormat("ScheduledTaskCache-%d").build());
+    this.fireToLaunchMillis = metrics.histogram(MetricRegistry.name(ScheduledTaskCache.class, "fireToLaunchMillis"));
+    this.uninitializedBuckets = new AtomicInteger(buckets.getNumBuckets());
+    this.readyListeners = new CopyOnWriteArrayList<>();
+    this.pathChildrenCaches = Lists.newArrayListWithCapacity(buckets.getNumBuckets());
+
+    metrics.register(MetricRegistry.name(ScheduledTaskCache.class, "size"), new Gauge<Integer>() {
+
+      @Override
+      public Integer getValue() {
+        return scheduled.size() + ready.size();
+      }
+
+    });
+
+    metrics.register(MetricRegistry.name(ScheduledTaskCache.class, "ready"), new Gauge<Integer>() {
+
+      @Override
+      public Integer getValue() {
+        return ready.size();
+      }
+
+    });
+
+    for (String bucketPath : buckets.getBucketPaths(TaskManager.SCHEDULED_PATH_ROOT)) {
+      final PathChildrenCache pathChildrenCache = new PathChildrenCache(curator, bucketPath, false);
+
+      pathChildrenCache.getListenable().addListener(this);
+      pathChildrenCaches.add(pathChildrenCache);
+    }
+  }
+
+  public void start() {
+    LOG.info("Starting scheduled task cache");
+
+    try {
+      for (PathChildrenCache pathChildrenCache : pathChildrenCaches) {
+        pathChildrenCache.start(StartMode.POST_INITIALIZED_EVENT);
+      }
+    } catch (Exception e) {
+      throw Throwables.propagate(e);
+    }
+  }
+
+  public void stop() {
+    initialized = false;
+
+    executorService.shutdownNow();
+
+    try {
+      for (PathChildrenCache pathChildrenCache : pathChildrenCaches) {
+        Closeables.close(pathChildrenCache, true);
+      }
+    } catch (Exception e) {
+      LOG.warn("While closing scheduled task cache", e);
+    }
+  }
+
+  /**
+   * The listener is run on the timer thread whenever the timer finds tasks that have come due, so it should hand off rather than do the work.
+   */
+  public void addReadyListener(Runnable listener) {
+    readyListeners.add(listener);
+  }
+
+  public void removeReadyListener(Runnable listener) {
+    readyListeners.remove(listener);
+  }
+
+  public boolean isInitialized() {
+    return initialized;
+  }
+
+  public int getNumTasks() {
+    return scheduled.size() + ready.size();
+  }
+
+  public List<SingularityPendingTaskId> getTasks() {
+    return ImmutableList.<SingularityPendingTaskId> builder().addAll(ready).addAll(scheduled).build();
+  }
+
+  /**
+   * Returns the tasks with nextRunAt at or before now, earliest first.
+   */
+  public List<SingularityPendingTaskId> getDueTasks(long now) {
+    // the timer may not have run yet
+    promote(now);
+
+    return ImmutableList.copyOf(ready);
+  }
+
+  public void addAll(Collection<SingularityPendingTaskId> taskIds) {
+    for (SingularityPendingTaskId taskId : taskIds) {
+      add(taskId);
+    }
+  }
+
+  private void add(SingularityPendingTaskId taskId) {
+    if (ready.contains(taskId)) {
+      return;
+    }
+
+    scheduled.add(taskId);
+
+    arm(taskId.getNextRunAt());
+  }
+
+  public void remove(SingularityPendingTaskId taskId) {
+    scheduled.remove(taskId);
+    ready.remove(taskId);
+  }
+
+  /**
+   * Removes a task that has just been launched, recording how long after its fire time the launch happened.
+   */
+  public void launched(SingularityPendingTaskId taskId) {
+    remove(taskId);
+
+    fireToLaunchMillis.update(Math.max(0, System.currentTimeMillis() - taskId.getNextRunAt()));
+  }
+
+  private int promote(long now) {
+    final NavigableSet<SingularityPendingTaskId> due = scheduled.headSet(new SingularityPendingTaskId("", now + 1, 0), false);
+
+    SingularityPendingTaskId taskId = null;
+    int promoted = 0;
+
+    while ((taskId = due.pollFirst()) != null) {
+      ready.add(taskId);
+      promoted++;
+    }
+
+    return promoted;
+  }
+
+  private synchronized void arm(long firesAt) {
+    if (timer != null && !timer.isDone() && timerFiresAt <= firesAt) {
+      return;
+    }
+
+    if (timer != null) {
+      timer.cancel(false);
+    }
+
+    timerFiresAt = firesAt;
+    timer = executorService.schedule(new Runnable() {
+
+      @Override
+      public void run() {
+        onTimer();
+      }
+
+    }, Math.max(0, firesAt - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+  }
+
+  private void onTimer() {
+    try {
+      final int promoted = promote(System.currentTimeMillis());
+
+      if (promoted > 0) {
+        LOG.trace(String.format("%s scheduled task(s) came due", promoted));
+
+        for (Runnable listener : readyListeners) {
+          listener.run();
+        }
+      }
+    } catch (Throwable t) {
+      LOG.error("While promoting due scheduled tasks", t);
+    }
+
+    synchronized (this) {
+      timer = null;
+    }
+
+    if (!scheduled.isEmpty()) {
+      try {
+        arm(scheduled.first().getNextRunAt());
+      } catch (NoSuchElementException nsee) {
+        // emptied concurrently
+      }
+    }
+  }
+
+  @Override
+  public void childEvent(CuratorFramework client, PathChildrenCacheEvent event) throws Exception {
+    switch (event.getType()) {
+      case CHILD_ADDED:
+        add(SingularityPendingTaskId.fromString(ZKPaths.getNodeFromPath(event.getData().getPath())));
+        break;
+      case CHILD_REMOVED:
+        remove(SingularityPendingTaskId.fromString(ZKPaths.getNodeFromPath(event.getData().getPath())));
+        break;
+      case INITIALIZED:
+        if (uninitializedBuckets.decrementAndGet() == 0) {
+          LOG.info(String.format("Scheduled task cache initialized with %s tasks", getNumTasks()));
+          initialized = true;
+        }
+        break;
+      case CONNECTION_SUSPENDED:
+      case CONNECTION_LOST:
+        if (initialized) {
+          LOG.warn(String.format("Scheduled task cache lost its connection (%s), reading from ZK until it is resynced", event.getType()));
+          initialized = false;
+        }
+        break;
+      case CONNECTION_RECONNECTED:
+        // every bucket's cache sees the reconnect, only the first needs to resync
+        if (uninitializedBuckets.get() == 0) {
+          synchronized (this) {
+            if (!initialized) {
+              resync();
+              initialized = true;
+            }
+          }
+        }
+        break;
+      default:
+        break;
+    }
+  }
+
+  private void resync() {
+    final long start = System.currentTimeMillis();
+
+    final Set<SingularityPendingTaskId> live = Sets.newHashSet();
+
+    for (String taskId : buckets.getBucketedChildren(TaskManager.SCHEDULED_PATH_ROOT)) {
+      live.add(SingularityPendingTaskId.fromString(taskId));
+    }
+
+    scheduled.retainAll(live);
+    ready.retainAll(live);
+    addAll(live);
+
+    LOG.info(String.format("Resynced scheduled task cache with %s tasks in %sms", getNumTasks(), System.currentTimeMillis() - start));
+  }
+
+}
@@ -2,22 +2,22 @@ package com.hubspot.singularity.data;
 
 import org.apache.curator.framework.CuratorFramework;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Throwables;
 import com.google.inject.Inject;
 import com.hubspot.singularity.SingularitySlave;
+import com.hubspot.singularity.hooks.SingularityEventLog;
 
 public class SlaveManager extends AbstractMachineManager<SingularitySlave> {
 
   private static final String SLAVE_ROOT = "slaves";
   
-  private final ObjectMapper objectMapper;
+  private final ZooKeeperCodec codec;
   
   @Inject
-  public SlaveManager(CuratorFramework curator, ObjectMapper objectMapper) {
-    super(curator, objectMapper);
+  public SlaveManager(CuratorFramework curator, ZooKeeperCodec codec, SingularityEventLog eventLog) {
+    super(curator, codec, eventLog);
   
-    this.objectMapper = objectMapper;
+    this.codec = codec;
   }
   
   @Override
@@ -28,7 +28,7 @@ public class SlaveManager extends AbstractMachineManager<SingularitySlave> {
   @Override
   public SingularitySlave fromBytes(byte[] bytes) {
     try {
-      return SingularitySlave.fromBytes(bytes, objectMapper);
+      return codec.decode(bytes, SingularitySlave.class);
     } catch (Exception e) {
       throw Throwables.propagate(e);
     }
@@ -1,14 +1,20 @@
 package com.hubspot.singularity.data;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.transaction.CuratorTransaction;
+import org.apache.curator.framework.api.transaction.CuratorTransactionFinal;
 import org.apache.curator.utils.ZKPaths;
 import org.apache.zookeeper.KeeperException.NoNodeException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.base.Function;
 import com.google.common.base.Optional;
 import com.google.common.base.Throwables;
 import com.google.common.collect.Lists;
@@ -17,36 +23,82 @@ import com.hubspot.singularity.SingularityPendingTaskId;
 import com.hubspot.singularity.SingularityTask;
 import com.hubspot.singularity.SingularityTaskCleanup;
 import com.hubspot.singularity.SingularityTaskId;
+import com.hubspot.singularity.SingularityTaskSummary;
+import com.hubspot.singularity.config.SingularityConfiguration;
 
 public class TaskManager extends CuratorManager {
 
   private final static Logger LOG = LoggerFactory.getLogger(TaskManager.class);
   
-  private final ObjectMapper objectMapper;
+  private final ZooKeeperCodec codec;
+  private final ZooKeeperBuckets buckets;
+  private final ActiveTaskCache activeTaskCache;
+  private final ScheduledTaskCache scheduledTaskCache;
+  private final boolean writeSummaries;
+  
+  private final static int MAX_TRANSACTION_BYTES = 512 * 1024;
+  private final static int LAUNCH_OPS_PER_TASK = 3;
   
   private final static String TASKS_ROOT = "/tasks";
   
-  private final static String ACTIVE_PATH_ROOT = TASKS_ROOT + "/active";
-  private final static String ACTIVE_PATH_FORMAT = ACTIVE_PATH_ROOT + "/%s";
+  private final static String LEGACY_ACTIVE_PATH_ROOT = TASKS_ROOT + "/active";
+  final static String ACTIVE_PATH_ROOT = TASKS_ROOT + "/bucketed/active";
+
+  private final static String DETAILS_PATH_ROOT = TASKS_ROOT + "/details";
+  private final static String DETAILS_PATH_FORMAT = DETAILS_PATH_ROOT + "/%s";
 
-  private final static String SCHEDULED_PATH_ROOT = TASKS_ROOT + "/scheduled";
-  private final static String SCHEDULED_PATH_FORMAT = SCHEDULED_PATH_ROOT + "/%s";
+  private final static String LEGACY_SCHEDULED_PATH_ROOT = TASKS_ROOT + "/scheduled";
+  final static String SCHEDULED_PATH_ROOT = TASKS_ROOT + "/bucketed/scheduled";
   
-  private final static String CLEANUP_PATH_ROOT = TASKS_ROOT + "/cleanup";
+  public final static String CLEANUP_PATH_ROOT = TASKS_ROOT + "/cleanup";
   private final static String CLEANUP_PATH_FORMAT = CLEANUP_PATH_ROOT + "/%s";
     
   @Inject
-  public TaskManager(CuratorFramework curator, ObjectMapper objectMapper) {
+  public TaskManager(CuratorFramework curator, ZooKeeperCodec codec, ZooKeeperBuckets buckets, ActiveTaskCache activeTaskCache, ScheduledTaskCache scheduledTaskCache,
+      SingularityConfiguration configuration) {
     super(curator);
-    this.objectMapper = objectMapper;
+    this.codec = codec;
+    this.buckets = buckets;
+    this.activeTaskCache = activeTaskCache;
+    this.scheduledTaskCache = scheduledTaskCache;
+    this.writeSummaries = configuration.isZooKeeperActiveTaskSummaries();
+  }
+  
+  static String getActivePath(ZooKeeperBuckets buckets, String taskId) {
+    return buckets.getPath(ACTIVE_PATH_ROOT, SingularityTaskId.fromString(taskId).getRequestId(), taskId);
   }
   
   private String getActivePath(String taskId) {
-    return String.format(ACTIVE_PATH_FORMAT, taskId);
+    return getActivePath(buckets, taskId);
+  }
+
+  private String getDetailsPath(String taskId) {
+    return String.format(DETAILS_PATH_FORMAT, taskId);
   }
 
   private String getScheduledPath(String taskId) {
-    return String.format(SCHEDULED_PATH_FORMAT, taskId);
+    return buckets.getPath(SCHEDULED_PATH_ROOT, SingularityPendingTaskId.fromString(taskId).getRequestId(), taskId);
+  }
+  
+  /**
+   * Moves active and scheduled tasks written by versions without buckets into the bucketed layout.
+   */
+  public static int migrateToBuckets(ZooKeeperBuckets buckets) {
+    return buckets.migrate(LEGACY_ACTIVE_PATH_ROOT, ACTIVE_PATH_ROOT, new Function<String, String>() {
+      
+      @Override
+      public String apply(String taskId) {
+        return SingularityTaskId.fromString(taskId).getRequestId();
+      }
+      
+    }) + buckets.migrate(LEGACY_SCHEDULED_PATH_ROOT, SCHEDULED_PATH_ROOT, new Function<String, String>() {
+      
+      @Override
+      public String apply(String taskId) {
+        return SingularityPendingTaskId.fromString(taskId).getRequestId();
+      }
+      
+    });
   }
   
   private String getCleanupPath(String taskId) {
@@ -58,20 +110,55 @@ public class TaskManager extends CuratorManager {
   }
   
   public int getNumActiveTasks() {
-    return getNumChildren(ACTIVE_PATH_ROOT);
+    if (activeTaskCache.isInitialized()) {
+      return activeTaskCache.getNumTasks();
+    }
+    
+    return buckets.getNumBucketedChildren(ACTIVE_PATH_ROOT);
   }
   
   public int getNumScheduledTasks() {
-    return getNumChildren(SCHEDULED_PATH_ROOT);
+    if (scheduledTaskCache.isInitialized()) {
+      return scheduledTaskCache.getNumTasks();
+    }
+    
+    return buckets.getNumBucketedChildren(SCHEDULED_PATH_ROOT);
   }
   
   public void persistScheduleTasks(List<SingularityPendingTaskId> taskIds) {
-    try {
-      for (SingularityPendingTaskId taskId : taskIds) {
-        persistTaskId(taskId);
+    if (taskIds.isEmpty()) {
+      return;
+    }
+    
+    for (SingularityPendingTaskId taskId : taskIds) {
+      buckets.ensureBucket(SCHEDULED_PATH_ROOT, taskId.getRequestId());
+    }
+    
+    for (List<SingularityPendingTaskId> partition : Lists.partition(taskIds, MAX_TRANSACTION_OPS)) {
+      try {
+        CuratorTransaction transaction = curator.inTransaction();
+        CuratorTransactionFinal operations = null;
+        
+        for (SingularityPendingTaskId taskId : partition) {
+          operations = transaction.create().forPath(getScheduledPath(taskId.toString())).and();
+          transaction = operations;
+        }
+        
+        operations.commit();
+        
+        scheduledTaskCache.addAll(partition);
+        continue;
+      } catch (Throwable t) {
+        LOG.warn(String.format("Couldn't persist %s scheduled tasks in one transaction, persisting individually", partition.size()), t);
+      }
+      
+      try {
+        for (SingularityPendingTaskId taskId : partition) {
+          persistTaskId(taskId);
+        }
+      } catch (Throwable t) {
+        throw Throwables.propagate(t);
       }
-    } catch (Throwable t) {
-      throw Throwables.propagate(t);
     }
   }
 
@@ -79,10 +166,11 @@ public class TaskManager extends CuratorManager {
     final String pendingPath = getScheduledPath(taskId.toString());
 
     curator.create().creatingParentsIfNeeded().forPath(pendingPath);
+    
+    scheduledTaskCache.addAll(Collections.singleton(taskId));
   }
   
-  private List<SingularityTaskId> getTaskIds(String root) {
-    List<String> taskIds = getChildren(root);
+  private List<SingularityTaskId> getTaskIds(List<String> taskIds) {
     List<SingularityTaskId> taskIdsObjs = Lists.newArrayListWithCapacity(taskIds.size());
 
     for (String taskId : taskIds) {
@@ -94,11 +182,78 @@ public class TaskManager extends CuratorManager {
   }
   
   public List<SingularityTaskId> getActiveTaskIds() {
-    return getTaskIds(ACTIVE_PATH_ROOT);
+    if (activeTaskCache.isInitialized()) {
+      final Set<String> taskIds = activeTaskCache.getTaskIds();
+      final List<SingularityTaskId> taskIdsObjs = Lists.newArrayListWithCapacity(taskIds.size());
+      
+      for (String taskId : taskIds) {
+        taskIdsObjs.add(SingularityTaskId.fromString(taskId));
+      }
+      
+      return taskIdsObjs;
+    }
+    
+    return getTaskIds(buckets.getBucketedChildren(ACTIVE_PATH_ROOT));
+  }
+  
+  public List<SingularityTaskId> getActiveTaskIdsForRequest(String requestId) {
+    if (activeTaskCache.isInitialized()) {
+      return activeTaskCache.getIndex().getByRequest(requestId);
+    }
+    
+    return SingularityTaskId.filter(getActiveTaskIds(), requestId);
+  }
+  
+  public List<SingularityTaskId> getActiveTaskIdsOnHost(String host) {
+    if (activeTaskCache.isInitialized()) {
+      return activeTaskCache.getIndex().getByHost(host);
+    }
+    
+    final List<SingularityTaskId> matching = Lists.newArrayList();
+    
+    for (SingularityTaskId taskId : getActiveTaskIds()) {
+      if (taskId.getHost().equals(host)) {
+        matching.add(taskId);
+      }
+    }
+    
+    return matching;
+  }
+  
+  public List<SingularityTaskId> getActiveTaskIdsOnRack(String rackId) {
+    if (activeTaskCache.isInitialized()) {
+      return activeTaskCache.getIndex().getByRack(rackId);
+    }
+    
+    final List<SingularityTaskId> matching = Lists.newArrayList();
+    
+    for (SingularityTaskId taskId : getActiveTaskIds()) {
+      if (taskId.getRackId().equals(rackId)) {
+        matching.add(taskId);
+      }
+    }
+    
+    return matching;
+  }
+  
+  public List<SingularityTaskId> getActiveTaskIdsOnSlave(String slaveId) {
+    if (activeTaskCache.isInitialized()) {
+      return activeTaskCache.getIndex().getBySlave(slaveId);
+    }
+    
+    final List<SingularityTaskId> matching = Lists.newArrayList();
+    
+    for (SingularityTaskSummary summary : getActiveTaskSummaries()) {
+      if (summary.getSlaveId().equals(slaveId)) {
+        matching.add(summary.getTaskId());
+      }
+    }
+    
+    return matching;
   }
   
   public List<SingularityTaskId> getCleanupTaskIds() {
-    return getTaskIds(CLEANUP_PATH_ROOT);
+    return getTaskIds(getChildren(CLEANUP_PATH_ROOT));
   }
   
   public List<SingularityTaskCleanup> getCleanupTasks() {
@@ -110,7 +265,7 @@ public class TaskManager extends CuratorManager {
       try {
         byte[] data = curator.getData().forPath(ZKPaths.makePath(CLEANUP_PATH_ROOT, taskId.getId()));
         
-        cleanupTasks.add(SingularityTaskCleanup.fromBytes(data, objectMapper));
+        cleanupTasks.add(codec.decode(data, SingularityTaskCleanup.class));
       } catch (NoNodeException nne) {
         LOG.info(String.format("Expected cleanup task %s but it wasn't there", taskId));
       } catch (Throwable t) {
@@ -121,15 +276,15 @@ public class TaskManager extends CuratorManager {
     return cleanupTasks;
   }
   
-  public Optional<SingularityTask> getActiveTask(String taskId) {
-    final String path = getActivePath(taskId);
+  public Optional<SingularityTaskSummary> getActiveTaskSummary(String taskId) {
+    if (activeTaskCache.isInitialized()) {
+      return activeTaskCache.getSummary(taskId);
+    }
     
     try {
-      byte[] data = curator.getData().forPath(path);
-      
-      SingularityTask task = SingularityTask.fromBytes(data, objectMapper);
+      byte[] data = curator.getData().forPath(getActivePath(taskId));
       
-      return Optional.of(task);
+      return Optional.of(activeTaskCache.decodeSummary(data));
     } catch (NoNodeException nne) {
       return Optional.absent();
     } catch (Exception e) {
@@ -137,20 +292,152 @@ public class TaskManager extends CuratorManager {
     }
   }
   
+  public List<SingularityTaskSummary> getActiveTaskSummaries() {
+    if (activeTaskCache.isInitialized()) {
+      return Lists.newArrayList(activeTaskCache.getSummaries());
+    }
+    
+    List<SingularityTaskId> taskIds = getActiveTaskIds();
+    List<SingularityTaskSummary> summaries = Lists.newArrayListWithCapacity(taskIds.size());
+      
+    for (SingularityTaskId taskId : taskIds) {
+      Optional<SingularityTaskSummary> maybeSummary = getActiveTaskSummary(taskId.toString());
+      
+      if (maybeSummary.isPresent()) {
+        summaries.add(maybeSummary.get());
+      } else {
+        LOG.info(String.format("Expected active node %s but it wasn't there", taskId));
+      }
+    }
+    
+    return summaries;
+  }
+  
+  /**
+   * Loads the full task from its detail node, or from the active node itself if it was launched before details were split out.
+   */
+  public Optional<SingularityTask> getActiveTask(String taskId) {
+    if (activeTaskCache.isInitialized()) {
+      if (!activeTaskCache.getSummary(taskId).isPresent()) {
+        return Optional.absent();
+      }
+      
+      Optional<SingularityTask> maybeTask = activeTaskCache.getTask(taskId);
+      
+      if (maybeTask.isPresent()) {
+        return maybeTask;
+      }
+    }
+    
+    try {
+      Optional<SingularityTask> maybeTask = loadActiveTask(taskId);
+      
+      if (maybeTask.isPresent()) {
+        activeTaskCache.putLoaded(maybeTask.get());
+      }
+      
+      return maybeTask;
+    } catch (Exception e) {
+      throw Throwables.propagate(e); 
+    }
+  }
+  
+  /**
+   * The detail node is only read when the active node holds a summary.
+   */
+  private Optional<SingularityTask> loadActiveTask(String taskId) throws Exception {
+    final JsonNode activeNode;
+    
+    try {
+      activeNode = activeTaskCache.decodeActiveNode(curator.getData().forPath(getActivePath(taskId)));
+    } catch (NoNodeException nne) {
+      return Optional.absent();
+    }
+    
+    if (!activeTaskCache.holdsSummary(activeNode)) {
+      return Optional.of(codec.convert(activeNode, SingularityTask.class));
+    }
+    
+    try {
+      return Optional.of(codec.decode(curator.getData().forPath(getDetailsPath(taskId)), SingularityTask.class));
+    } catch (NoNodeException nne) {
+      LOG.warn(String.format("Active task %s has no detail node", taskId));
+      return Optional.absent();
+    }
+  }
+  
+  /**
+   * Tasks that aren't already cached are read in two pipelined passes, active nodes first and then the detail nodes of tasks whose active node holds a
+   * summary, rather than with a round trip per task.
+   */
   public List<SingularityTask> getActiveTasks() {
     List<SingularityTaskId> taskIds = getActiveTaskIds();
     
     try {
       List<SingularityTask> tasks = Lists.newArrayListWithCapacity(taskIds.size());
+      List<String> uncached = Lists.newArrayList();
       
       for (SingularityTaskId taskId : taskIds) {
-        Optional<SingularityTask> maybeTask = getActiveTask(taskId.toString());
+        Optional<SingularityTask> maybeTask = activeTaskCache.isInitialized() ? activeTaskCache.getTask(taskId.toString()) : Optional.<SingularityTask> absent();
         
         if (maybeTask.isPresent()) {
           tasks.add(maybeTask.get());
         } else {
+          uncached.add(taskId.toString());
+        }
+      }
+      
+      if (uncached.isEmpty()) {
+        return tasks;
+      }
+      
+      final List<String> activePaths = Lists.newArrayListWithCapacity(uncached.size());
+      
+      for (String taskId : uncached) {
+        activePaths.add(getActivePath(taskId));
+      }
+      
+      final Map<String, byte[]> active = getDataInBackground(activePaths);
+      final List<String> withSummaries = Lists.newArrayList();
+      
+      for (String taskId : uncached) {
+        final byte[] data = active.get(getActivePath(taskId));
+        
+        if (data == null) {
           LOG.info(String.format("Expected active node %s but it wasn't there", taskId));
+          continue;
         }
+        
+        final JsonNode activeNode = activeTaskCache.decodeActiveNode(data);
+        
+        if (activeTaskCache.holdsSummary(activeNode)) {
+          withSummaries.add(taskId);
+        } else {
+          loaded(tasks, codec.convert(activeNode, SingularityTask.class));
+        }
+      }
+      
+      if (withSummaries.isEmpty()) {
+        return tasks;
+      }
+      
+      final List<String> detailsPaths = Lists.newArrayListWithCapacity(withSummaries.size());
+      
+      for (String taskId : withSummaries) {
+        detailsPaths.add(getDetailsPath(taskId));
+      }
+      
+      final Map<String, byte[]> details = getDataInBackground(detailsPaths);
+      
+      for (String taskId : withSummaries) {
+        final byte[] data = details.get(getDetailsPath(taskId));
+        
+        if (data == null) {
+          LOG.warn(String.format("Active task %s has no detail node", taskId));
+          continue;
+        }
+        
+        loaded(tasks, codec.decode(data, SingularityTask.class));
       }
 
       return tasks;
@@ -158,9 +445,19 @@ public class TaskManager extends CuratorManager {
       throw Throwables.propagate(t);
     }
   }
+  
+  private void loaded(List<SingularityTask> tasks, SingularityTask task) {
+    tasks.add(task);
+    
+    activeTaskCache.putLoaded(task);
+  }
 
   public List<SingularityPendingTaskId> getScheduledTasks() {
-    List<String> taskIds = getChildren(SCHEDULED_PATH_ROOT);
+    if (scheduledTaskCache.isInitialized()) {
+      return scheduledTaskCache.getTasks();
+    }
+    
+    List<String> taskIds = buckets.getBucketedChildren(SCHEDULED_PATH_ROOT);
     List<SingularityPendingTaskId> taskIdsObjs = Lists.newArrayListWithCapacity(taskIds.size());
 
     for (String taskId : taskIds) {
@@ -180,24 +477,175 @@ public class TaskManager extends CuratorManager {
   }
 
   private void launchTaskPrivate(SingularityTask task) throws Exception {
+    buckets.ensureBucket(ACTIVE_PATH_ROOT, task.getTaskId().getRequestId());
+    ensurePath(DETAILS_PATH_ROOT);
+    
+    addLaunchOperations(curator.inTransaction(), task, encodeActiveNode(task), encodeDetails(task)).commit();
+    
+    activeTaskCache.put(task);
+    scheduledTaskCache.launched(task.getTaskRequest().getPendingTaskId());
+  }
+  
+  /**
+   * Versions before summaries were split out decode active nodes as full tasks, so summaries and detail nodes are only written once
+   * zooKeeperActiveTaskSummaries is enabled - which must wait until every instance can read them. Either layout is read.
+   */
+  private byte[] encodeActiveNode(SingularityTask task) {
+    if (writeSummaries) {
+      return codec.encode(SingularityTaskSummary.fromTask(task));
+    }
+    
+    return codec.encode(task);
+  }
+  
+  private Optional<byte[]> encodeDetails(SingularityTask task) {
+    if (writeSummaries) {
+      return Optional.of(codec.encode(task));
+    }
+    
+    return Optional.absent();
+  }
+  
+  private CuratorTransactionFinal addLaunchOperations(CuratorTransaction transaction, SingularityTask task, byte[] activeNode, Optional<byte[]> details) throws Exception {
     final String scheduledPath = getScheduledPath(task.getTaskRequest().getPendingTaskId().toString());
     final String activePath = getActivePath(task.getTaskId().toString());
     
-    curator.delete().forPath(scheduledPath);
+    final CuratorTransactionFinal operations = transaction.delete().forPath(scheduledPath).and()
+        .create().forPath(activePath, activeNode).and();
+    
+    if (!details.isPresent()) {
+      return operations;
+    }
+    
+    return operations.create().forPath(getDetailsPath(task.getTaskId().toString()), details.get()).and();
+  }
+  
+  /**
+   * Moves tasks from scheduled to active in as few transactions as fit within ZK's request size. If a transaction fails, its tasks are launched one at a time.
+   */
+  public void launchTasks(List<SingularityTask> tasks) {
+    if (tasks.isEmpty()) {
+      return;
+    }
+    
+    for (SingularityTask task : tasks) {
+      buckets.ensureBucket(ACTIVE_PATH_ROOT, task.getTaskId().getRequestId());
+    }
+    ensurePath(DETAILS_PATH_ROOT);
+    
+    final List<SingularityTask> batch = Lists.newArrayList();
+    
+    CuratorTransaction transaction = curator.inTransaction();
+    CuratorTransactionFinal operations = null;
+    int batchBytes = 0;
     
-    curator.create().creatingParentsIfNeeded().forPath(activePath, task.getAsBytes(objectMapper));
+    try {
+      for (SingularityTask task : tasks) {
+        final byte[] activeNode = encodeActiveNode(task);
+        final Optional<byte[]> details = encodeDetails(task);
+        final int taskBytes = activeNode.length + (details.isPresent() ? details.get().length : 0);
+        
+        if (!batch.isEmpty() && (batchBytes + taskBytes > MAX_TRANSACTION_BYTES || (batch.size() + 1) * LAUNCH_OPS_PER_TASK > MAX_TRANSACTION_OPS)) {
+          commitLaunch(operations, batch);
+          
+          batch.clear();
+          batchBytes = 0;
+          transaction = curator.inTransaction();
+        }
+        
+        operations = addLaunchOperations(transaction, task, activeNode, details);
+        transaction = operations;
+        
+        batch.add(task);
+        batchBytes += taskBytes;
+      }
+    } catch (Throwable t) {
+      throw Throwables.propagate(t);
+    }
+    
+    commitLaunch(operations, batch);
+  }
+  
+  private void commitLaunch(CuratorTransactionFinal operations, List<SingularityTask> batch) {
+    try {
+      operations.commit();
+      
+      for (SingularityTask task : batch) {
+        activeTaskCache.put(task);
+        scheduledTaskCache.launched(task.getTaskRequest().getPendingTaskId());
+      }
+      
+      return;
+    } catch (Throwable t) {
+      LOG.warn(String.format("Couldn't launch %s tasks in one transaction, launching individually", batch.size()), t);
+    }
+    
+    for (SingularityTask task : batch) {
+      launchTask(task);
+    }
   }
   
   public CreateResult createCleanupTask(SingularityTaskCleanup cleanupTask) {
-    return create(getCleanupPath(cleanupTask.getTaskId()), Optional.of(cleanupTask.getAsBytes(objectMapper)));
+    return create(getCleanupPath(cleanupTask.getTaskId()), Optional.of(codec.encode(cleanupTask)));
   }
   
   public void deleteActiveTask(String taskId) {
     delete(getActivePath(taskId));
+    
+    try {
+      curator.delete().forPath(getDetailsPath(taskId));
+    } catch (NoNodeException nne) {
+      // written without a detail node
+    } catch (Throwable t) {
+      throw Throwables.propagate(t);
+    }
+    
+    activeTaskCache.remove(taskId);
+  }
+  
+  public int resyncActiveTasks() {
+    return activeTaskCache.resync();
+  }
+  
+  /**
+   * Returns the scheduled tasks with nextRunAt at or before now, earliest first.
+   */
+  public List<SingularityPendingTaskId> getDueScheduledTasks(long now) {
+    if (scheduledTaskCache.isInitialized()) {
+      return scheduledTaskCache.getDueTasks(now);
+    }
+    
+    final List<SingularityPendingTaskId> dueTaskIds = Lists.newArrayList();
+    
+    for (SingularityPendingTaskId taskId : getScheduledTasks()) {
+      if (taskId.getNextRunAt() <= now) {
+        dueTaskIds.add(taskId);
+      }
+    }
+    
+    Collections.sort(dueTaskIds);
+    
+    return dueTaskIds;
+  }
+  
+  public void deleteScheduledTasks(List<SingularityPendingTaskId> taskIds) {
+    final List<String> paths = Lists.newArrayListWithCapacity(taskIds.size());
+    
+    for (SingularityPendingTaskId taskId : taskIds) {
+      paths.add(getScheduledPath(taskId.toString()));
+    }
+    
+    deleteInTransactions(paths);
+    
+    for (SingularityPendingTaskId taskId : taskIds) {
+      scheduledTaskCache.remove(taskId);
+    }
   }
   
   public void deleteScheduledTask(String taskId) {
     delete(getScheduledPath(taskId));
+    
+    scheduledTaskCache.remove(SingularityPendingTaskId.fromString(taskId));
   }
   
   public void deleteCleanupTask(String taskId) {
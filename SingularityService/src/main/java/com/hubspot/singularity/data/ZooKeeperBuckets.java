@@ -0,0 +1,261 @@
+package com.hubspot.singularity.data;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.utils.ZKPaths;
+import org.apache.zookeeper.KeeperException.NoNodeException;
+import org.apache.zookeeper.KeeperException.NodeExistsException;
+import org.apache.zookeeper.data.Stat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import com.hubspot.mesos.JavaUtils;
+import com.hubspot.singularity.config.SingularityConfiguration;
+
+/**
+ * Spreads large collections across a fixed number of bucket nodes keyed by a hash of the request id, so that no single getChildren response
+ * has to hold every child. Listing fans out across buckets in parallel. The number of buckets can't change once data has been written: it is
+ * recorded in ZK the first time checkNumBuckets runs, and checked against the configured number every time after that.
+ */
+public class ZooKeeperBuckets extends CuratorManager {
+
+  private final static Logger LOG = LoggerFactory.getLogger(ZooKeeperBuckets.class);
+
+  private final static int MAX_BUCKETS = 256;
+
+  public final static String NUM_BUCKETS_PATH = "/buckets";
+
+  private final int numBuckets;
+  private final ExecutorService executorService;
+
+  @Inject
+  public ZooKeeperBuckets(CuratorFramework curator, SingularityConfiguration configuration) {
+    super(curator);
+
+    Preconditions.checkArgument(configuration.getZooKeeperBuckets() > 0 && configuration.getZooKeeperBuckets() <= MAX_BUCKETS, "zooKeeperBuckets must be between 1 and %s", MAX_BUCKETS);
+
+    this.numBuckets = configuration.getZooKeeperBuckets();
+    this.executorService = Executors.newFixedThreadPool(configuration.getZooKeeperListingThreads(), new ThreadFactoryBuilder().setDaemon(true).setNameFormat("ZooKeeperBuckets-%d").build());
+  }
+
+  public void stop() {
+    executorService.shutdownNow();
+  }
+
+  /**
+   * Fails if the configured number of buckets differs from the one data was written with, since every bucket past a smaller number would be hidden
+   * and lookups would go to the wrong bucket.
+   */
+  public void checkNumBuckets() {
+    try {
+      curator.create().creatingParentsIfNeeded().forPath(NUM_BUCKETS_PATH, JavaUtils.toBytes(Integer.toString(numBuckets)));
+
+      LOG.info(String.format("Recorded %s ZK buckets at %s", numBuckets, NUM_BUCKETS_PATH));
+      return;
+    } catch (NodeExistsException nee) {
+      // recorded by an earlier run
+    } catch (Exception e) {
+      throw Throwables.propagate(e);
+    }
+
+    final int recordedBuckets;
+
+    try {
+      recordedBuckets = Integer.parseInt(JavaUtils.toString(curator.getData().forPath(NUM_BUCKETS_PATH)).trim());
+    } catch (Exception e) {
+      throw Throwables.propagate(e);
+    }
+
+    if (recordedBuckets != numBuckets) {
+      throw new IllegalStateException(String.format("zooKeeperBuckets is %s, but data in ZK was written with %s buckets (recorded at %s)", numBuckets, recordedBuckets, NUM_BUCKETS_PATH));
+    }
+  }
+
+  public int getNumBuckets() {
+    return numBuckets;
+  }
+
+  public String getBucket(String requestId) {
+    return String.format("%02x", (requestId.hashCode() & Integer.MAX_VALUE) % numBuckets);
+  }
+
+  public String getBucketPath(String root, String requestId) {
+    return ZKPaths.makePath(root, getBucket(requestId));
+  }
+
+  public String getPath(String root, String requestId, String node) {
+    return ZKPaths.makePath(getBucketPath(root, requestId), node);
+  }
+
+  public List<String> getBucketPaths(String root) {
+    final List<String> bucketPaths = Lists.newArrayListWithCapacity(numBuckets);
+
+    for (int i = 0; i < numBuckets; i++) {
+      bucketPaths.add(ZKPaths.makePath(root, String.format("%02x", i)));
+    }
+
+    return bucketPaths;
+  }
+
+  /**
+   * Transactions can't create parents, so the bucket has to exist before a node is created in it as part of one.
+   */
+  public void ensureBucket(String root, String requestId) {
+    ensurePath(getBucketPath(root, requestId));
+  }
+
+  public List<String> getBucketedChildren(String root) {
+    final List<String> children = Lists.newArrayList();
+
+    for (List<String> bucketChildren : fanOut(root, new Function<String, List<String>>() {
+
+      @Override
+      public List<String> apply(String bucketPath) {
+        return getChildren(bucketPath);
+      }
+
+    })) {
+      children.addAll(bucketChildren);
+    }
+
+    return children;
+  }
+
+  public int getNumBucketedChildren(String root) {
+    int numChildren = 0;
+
+    for (Integer bucketChildren : fanOut(root, new Function<String, Integer>() {
+
+      @Override
+      public Integer apply(String bucketPath) {
+        return getNumChildren(bucketPath);
+      }
+
+    })) {
+      numChildren += bucketChildren;
+    }
+
+    return numChildren;
+  }
+
+  private <T> List<T> fanOut(String root, final Function<String, T> function) {
+    final List<Future<T>> futures = Lists.newArrayListWithCapacity(numBuckets);
+
+    for (final String bucketPath : getBucketPaths(root)) {
+      futures.add(executorService.submit(new Callable<T>() {
+
+        @Override
+        public T call() throws Exception {
+          return function.apply(bucketPath);
+        }
+
+      }));
+    }
+
+    final List<T> results = Lists.newArrayListWithCapacity(numBuckets);
+
+    try {
+      for (Future<T> future : futures) {
+        results.add(future.get());
+      }
+    } catch (Throwable t) {
+      for (Future<T> future : futures) {
+        future.cancel(true);
+      }
+
+      throw Throwables.propagate(t);
+    }
+
+    return results;
+  }
+
+  /**
+   * Moves every child of a flat legacy root into its bucket under root, each in its own transaction. Safe to run again after a partial migration. A
+   * legacy node whose bucketed copy already exists is only removed if the two hold the same data. Returns the number of nodes moved.
+   *
+   * Listing the legacy root is a single getChildren call, so this is meant to run from SingularityBucketMigrationCommand with a large jute.maxbuffer
+   * rather than inside a running scheduler.
+   */
+  public int migrate(String legacyRoot, String root, Function<String, String> requestIdFunction) {
+    final long start = System.currentTimeMillis();
+    final List<String> legacyChildren = getChildren(legacyRoot);
+
+    if (legacyChildren.isEmpty()) {
+      return 0;
+    }
+
+    LOG.info(String.format("Migrating %s nodes from %s into %s buckets under %s", legacyChildren.size(), legacyRoot, numBuckets, root));
+
+    int migrated = 0;
+    int conflicts = 0;
+
+    for (String child : legacyChildren) {
+      final String legacyPath = ZKPaths.makePath(legacyRoot, child);
+      final String requestId = requestIdFunction.apply(child);
+
+      ensureBucket(root, requestId);
+
+      try {
+        final Stat stat = new Stat();
+        final byte[] data = curator.getData().storingStatIn(stat).forPath(legacyPath);
+
+        curator.inTransaction()
+          .create().forPath(getPath(root, requestId, child), data).and()
+          .delete().withVersion(stat.getVersion()).forPath(legacyPath).and()
+          .commit();
+
+        migrated++;
+      } catch (NoNodeException nne) {
+        LOG.debug(String.format("%s was removed or migrated by someone else", legacyPath));
+      } catch (NodeExistsException nee) {
+        if (removeIfMigrated(legacyPath, getPath(root, requestId, child))) {
+          LOG.info(String.format("%s was already migrated, removed it", legacyPath));
+        } else {
+          conflicts++;
+        }
+      } catch (Throwable t) {
+        throw Throwables.propagate(t);
+      }
+    }
+
+    LOG.info(String.format("Migrated %s of %s nodes from %s in %sms (%s left in place because their bucketed copy differs)", migrated, legacyChildren.size(), legacyRoot,
+        System.currentTimeMillis() - start, conflicts));
+
+    return migrated;
+  }
+
+  private boolean removeIfMigrated(String legacyPath, String path) {
+    try {
+      final Stat stat = new Stat();
+      final byte[] legacyData = curator.getData().storingStatIn(stat).forPath(legacyPath);
+      final byte[] data = curator.getData().forPath(path);
+
+      if (!Arrays.equals(legacyData, data)) {
+        LOG.warn(String.format("%s and %s both exist with different data, leaving both", legacyPath, path));
+        return false;
+      }
+
+      curator.delete().withVersion(stat.getVersion()).forPath(legacyPath);
+
+      return true;
+    } catch (NoNodeException nne) {
+      LOG.debug(String.format("%s or %s was removed while checking it", legacyPath, path));
+      return false;
+    } catch (Throwable t) {
+      throw Throwables.propagate(t);
+    }
+  }
+
+}
@@ -0,0 +1,156 @@
+package com.hubspot.singularity.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Throwables;
+import com.google.common.io.ByteStreams;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+import com.hubspot.singularity.SingularityJsonObject.SingularityJsonException;
+import com.hubspot.singularity.SingularityModule;
+import com.hubspot.singularity.config.SingularityConfiguration;
+
+/**
+ * Encodes objects stored in ZK. Plain JSON without compression is written exactly as before, so older versions can still read it.
+ * Anything else is written behind a small header (magic byte, format version, encoding, compression). Nodes without the header are read as legacy JSON.
+ */
+public class ZooKeeperCodec {
+
+  public enum ZooKeeperEncoding {
+    JSON, SMILE;
+  }
+
+  // legacy JSON nodes always start with '{'
+  private final static byte MAGIC = 0;
+  private final static byte FORMAT_VERSION = 1;
+  private final static int HEADER_LENGTH = 4;
+
+  private final static byte COMPRESSION_NONE = 0;
+  private final static byte COMPRESSION_DEFLATE = 1;
+
+  private final static int MIN_COMPRESSION_BYTES = 512;
+
+  private final ObjectMapper objectMapper;
+  private final ObjectMapper smileObjectMapper;
+  private final ZooKeeperEncoding encoding;
+  private final boolean compress;
+
+  @Inject
+  public ZooKeeperCodec(ObjectMapper objectMapper, @Named(SingularityModule.SMILE_OBJECT_MAPPER) ObjectMapper smileObjectMapper, SingularityConfiguration configuration) {
+    this.objectMapper = objectMapper;
+    this.smileObjectMapper = smileObjectMapper;
+    this.encoding = ZooKeeperEncoding.valueOf(configuration.getZooKeeperDataEncoding());
+    this.compress = configuration.isZooKeeperDataCompression();
+  }
+
+  public byte[] encode(Object object) throws SingularityJsonException {
+    if (encoding == ZooKeeperEncoding.JSON && !compress) {
+      return write(objectMapper, object);
+    }
+
+    byte[] payload = write(getObjectMapper(encoding), object);
+    byte compression = COMPRESSION_NONE;
+
+    if (compress && payload.length >= MIN_COMPRESSION_BYTES) {
+      payload = deflate(payload);
+      compression = COMPRESSION_DEFLATE;
+    }
+
+    final byte[] bytes = new byte[HEADER_LENGTH + payload.length];
+
+    bytes[0] = MAGIC;
+    bytes[1] = FORMAT_VERSION;
+    bytes[2] = (byte) encoding.ordinal();
+    bytes[3] = compression;
+
+    System.arraycopy(payload, 0, bytes, HEADER_LENGTH, payload.length);
+
+    return bytes;
+  }
+
+  public <T> T decode(byte[] bytes, Class<T> clazz) throws IOException {
+    if (isLegacy(bytes)) {
+      return objectMapper.readValue(bytes, clazz);
+    }
+
+    return getObjectMapper(getEncoding(bytes)).readValue(getPayload(bytes), clazz);
+  }
+
+  /**
+   * For nodes that may hold one of several types, so they can be told apart without parsing the payload twice. See convert.
+   */
+  public JsonNode decodeTree(byte[] bytes) throws IOException {
+    if (isLegacy(bytes)) {
+      return objectMapper.readTree(bytes);
+    }
+
+    return getObjectMapper(getEncoding(bytes)).readTree(getPayload(bytes));
+  }
+
+  public <T> T convert(JsonNode tree, Class<T> clazz) throws IOException {
+    return objectMapper.treeToValue(tree, clazz);
+  }
+
+  private boolean isLegacy(byte[] bytes) {
+    return bytes.length == 0 || bytes[0] != MAGIC;
+  }
+
+  private ZooKeeperEncoding getEncoding(byte[] bytes) throws IOException {
+    if (bytes.length < HEADER_LENGTH || bytes[1] > FORMAT_VERSION || bytes[2] >= ZooKeeperEncoding.values().length) {
+      throw new IOException(String.format("Unsupported ZK data header %s", Arrays.toString(Arrays.copyOf(bytes, Math.min(bytes.length, HEADER_LENGTH)))));
+    }
+
+    return ZooKeeperEncoding.values()[bytes[2]];
+  }
+
+  private byte[] getPayload(byte[] bytes) throws IOException {
+    final byte[] payload = Arrays.copyOfRange(bytes, HEADER_LENGTH, bytes.length);
+
+    if (bytes[3] == COMPRESSION_DEFLATE) {
+      return inflate(payload);
+    } else if (bytes[3] != COMPRESSION_NONE) {
+      throw new IOException(String.format("Unsupported ZK data compression %s", bytes[3]));
+    }
+
+    return payload;
+  }
+
+  private ObjectMapper getObjectMapper(ZooKeeperEncoding encoding) {
+    return encoding == ZooKeeperEncoding.SMILE ? smileObjectMapper : objectMapper;
+  }
+
+  private byte[] write(ObjectMapper mapper, Object object) {
+    try {
+      return mapper.writeValueAsBytes(object);
+    } catch (JsonProcessingException jpe) {
+      throw new SingularityJsonException(jpe);
+    }
+  }
+
+  private byte[] deflate(byte[] bytes) {
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream(bytes.length / 2);
+
+    try (DeflaterOutputStream dos = new DeflaterOutputStream(baos)) {
+      dos.write(bytes);
+    } catch (IOException e) {
+      throw Throwables.propagate(e);
+    }
+
+    return baos.toByteArray();
+  }
+
+  private byte[] inflate(byte[] bytes) throws IOException {
+    try (InflaterInputStream iis = new InflaterInputStream(new ByteArrayInputStream(bytes))) {
+      return ByteStreams.toByteArray(iis);
+    }
+  }
+
+}
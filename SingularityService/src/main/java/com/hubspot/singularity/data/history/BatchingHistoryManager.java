@@ -0,0 +1,530 @@
+package com.hubspot.singularity.data.history;
+
+import java.sql.SQLException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.skife.jdbi.v2.exceptions.UnableToObtainConnectionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import com.hubspot.singularity.SingularityJsonObject.SingularityJsonException;
+import com.hubspot.singularity.SingularityRequest;
+import com.hubspot.singularity.SingularityRequestHistory;
+import com.hubspot.singularity.SingularityRequestHistory.RequestState;
+import com.hubspot.singularity.SingularityTask;
+import com.hubspot.singularity.SingularityTaskHistory;
+import com.hubspot.singularity.SingularityTaskIdHistory;
+import com.hubspot.singularity.config.SingularityConfiguration;
+
+/**
+ * Queues task history writes made from the scheduler callbacks and flushes them to MySQL in batches on a dedicated thread.
+ * Request history writes and all reads go straight through to the JDBI history manager.
+ *
+ * Writes for a task are applied in the order they were made. Each batch is a single transaction, so a failed batch wrote nothing:
+ * - when MySQL couldn't be reached, the unwritten writes are kept and retried whole with exponential backoff before anything queued after them;
+ * - otherwise the batch is retried row by row, and rows that still fail are logged and counted in failedWrites.
+ *
+ * A full queue blocks callers for at most historyMaxEnqueueBlockMillis, so that an outage can't stall the scheduler, after which the write is dropped
+ * and counted in droppedWrites.
+ */
+public class BatchingHistoryManager implements HistoryManager {
+
+  private final static Logger LOG = LoggerFactory.getLogger(BatchingHistoryManager.class);
+
+  private final JDBIHistoryManager delegate;
+  private final HistoryJDBI history;
+  private final ObjectMapper objectMapper;
+  private final SingularityConfiguration configuration;
+
+  private final BlockingQueue<HistoryWrite> queue;
+  private final ExecutorService flusher;
+
+  private final Timer flushTimer;
+  private final Meter blockedEnqueues;
+  private final Meter failedWrites;
+  private final Meter droppedWrites;
+  private final Meter retriedBatches;
+
+  // held while a batch is taken from the queue and written, so that writes made after stop() can't overtake queued ones
+  private final Object flushLock;
+
+  private volatile boolean stopped;
+  private volatile int numRetrying;
+
+  @Inject
+  public BatchingHistoryManager(JDBIHistoryManager delegate, HistoryJDBI history, ObjectMapper objectMapper, SingularityConfiguration configuration, MetricRegistry metrics) {
+    this.delegate = delegate;
+    this.history = history;
+    this.objectMapper = objectMapper;
+    this.configuration = configuration;
+
+    this.queue = new ArrayBlockingQueue<>(configuration.getHistoryQueueSize());
+    this.flusher = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setDaemon(true).setNameFormat("SingularityHistoryWriter-%d").build());
+
+    this.flushTimer = metrics.timer(MetricRegistry.name(BatchingHistoryManager.class, "flush"));
+    this.blockedEnqueues = metrics.meter(MetricRegistry.name(BatchingHistoryManager.class, "blockedEnqueues"));
+    this.failedWrites = metrics.meter(MetricRegistry.name(BatchingHistoryManager.class, "failedWrites"));
+    this.droppedWrites = metrics.meter(MetricRegistry.name(BatchingHistoryManager.class, "droppedWrites"));
+    this.retriedBatches = metrics.meter(MetricRegistry.name(BatchingHistoryManager.class, "retriedBatches"));
+    this.flushLock = new Object();
+
+    metrics.register(MetricRegistry.name(BatchingHistoryManager.class, "queueDepth"), new Gauge<Integer>() {
+
+      @Override
+      public Integer getValue() {
+        return queue.size();
+      }
+
+    });
+
+    metrics.register(MetricRegistry.name(BatchingHistoryManager.class, "retrying"), new Gauge<Integer>() {
+
+      @Override
+      public Integer getValue() {
+        return numRetrying;
+      }
+
+    });
+
+    flusher.submit(new Runnable() {
+
+      @Override
+      public void run() {
+        flushLoop();
+      }
+
+    });
+  }
+
+  private enum HistoryWriteType {
+    TASK_HISTORY, TASK_UPDATE, TASK_STATUS, TASK_DIRECTORY;
+  }
+
+  private static class HistoryWrite {
+
+    private final HistoryWriteType type;
+    private final String taskId;
+    private final String status;
+    private final Date timestamp;
+    private final Optional<String> message;
+    private final Optional<SingularityTask> task;
+
+    private HistoryWrite(HistoryWriteType type, String taskId, String status, Date timestamp, Optional<String> message, Optional<SingularityTask> task) {
+      this.type = type;
+      this.taskId = taskId;
+      this.status = status;
+      this.timestamp = timestamp;
+      this.message = message;
+      this.task = task;
+    }
+
+  }
+
+  @Override
+  public void saveTaskHistory(SingularityTask task, String driverStatus) {
+    enqueue(new HistoryWrite(HistoryWriteType.TASK_HISTORY, task.getTaskId().toString(), driverStatus, new Date(), Optional.<String> absent(), Optional.of(task)));
+  }
+
+  @Override
+  public void updateTaskHistory(String taskId, String statusUpdate, Date timestamp) {
+    enqueue(new HistoryWrite(HistoryWriteType.TASK_STATUS, taskId, statusUpdate, timestamp, Optional.<String> absent(), Optional.<SingularityTask> absent()));
+  }
+
+  @Override
+  public void saveTaskUpdate(String taskId, String statusUpdate, Optional<String> message, Date timestamp) {
+    enqueue(new HistoryWrite(HistoryWriteType.TASK_UPDATE, taskId, statusUpdate, timestamp, message, Optional.<SingularityTask> absent()));
+  }
+
+  @Override
+  public void updateTaskDirectory(String taskId, String directory) {
+    enqueue(new HistoryWrite(HistoryWriteType.TASK_DIRECTORY, taskId, null, null, Optional.of(directory), Optional.<SingularityTask> absent()));
+  }
+
+  @Override
+  public void saveRequestHistoryUpdate(SingularityRequest request, RequestState state, Optional<String> user) {
+    delegate.saveRequestHistoryUpdate(request, state, user);
+  }
+
+  @Override
+  public List<SingularityTaskIdHistory> getTaskHistoryForRequest(String requestId, Integer limitStart, Integer limitCount) {
+    return delegate.getTaskHistoryForRequest(requestId, limitStart, limitCount);
+  }
+
+  @Override
+  public List<SingularityTaskIdHistory> getTaskHistoryForRequestLike(String requestIdLike, Integer limitStart, Integer limitCount) {
+    return delegate.getTaskHistoryForRequestLike(requestIdLike, limitStart, limitCount);
+  }
+
+  @Override
+  public Optional<SingularityTaskHistory> getTaskHistory(String taskId) {
+    return delegate.getTaskHistory(taskId);
+  }
+
+  @Override
+  public List<SingularityRequestHistory> getRequestHistory(String requestId) {
+    return delegate.getRequestHistory(requestId);
+  }
+
+  @Override
+  public List<SingularityRequestHistory> getRequestHistoryLike(String requestIdLike, Integer limitStart, Integer limitCount) {
+    return delegate.getRequestHistoryLike(requestIdLike, limitStart, limitCount);
+  }
+
+  public int getQueueDepth() {
+    return queue.size();
+  }
+
+  private void enqueue(HistoryWrite write) {
+    final long start = System.currentTimeMillis();
+
+    try {
+      while (!stopped) {
+        if (queue.offer(write, configuration.getHistoryEnqueueTimeoutMillis(), TimeUnit.MILLISECONDS)) {
+          return;
+        }
+
+        blockedEnqueues.mark();
+
+        if (System.currentTimeMillis() - start >= configuration.getHistoryMaxEnqueueBlockMillis()) {
+          droppedWrites.mark();
+
+          LOG.error(String.format("History queue is full (%s, %s writes waiting to be retried), dropped %s for %s", queue.size(), numRetrying, write.type, write.taskId));
+          return;
+        }
+
+        LOG.warn(String.format("History queue is full (%s), still waiting to enqueue %s for %s", queue.size(), write.type, write.taskId));
+      }
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+    }
+
+    // stopped or interrupted - write through, but only after everything queued before it
+    synchronized (flushLock) {
+      drainQueue();
+
+      writeSingle(write);
+    }
+  }
+
+  private void flushLoop() {
+    final List<HistoryWrite> batch = Lists.newArrayListWithCapacity(configuration.getHistoryBatchSize());
+
+    while (!stopped) {
+      try {
+        synchronized (flushLock) {
+          HistoryWrite first = queue.poll(1, TimeUnit.SECONDS);
+
+          if (first == null) {
+            continue;
+          }
+
+          batch.add(first);
+          queue.drainTo(batch, configuration.getHistoryBatchSize() - 1);
+
+          flushUntilWritten(batch);
+        }
+      } catch (InterruptedException ie) {
+        LOG.info("History writer interrupted");
+        break;
+      } catch (Throwable t) {
+        LOG.error("Unexpected error while flushing history", t);
+      } finally {
+        batch.clear();
+      }
+    }
+
+    synchronized (flushLock) {
+      drainQueue();
+    }
+  }
+
+  private void drainQueue() {
+    final List<HistoryWrite> batch = Lists.newArrayListWithCapacity(configuration.getHistoryBatchSize());
+
+    while (queue.drainTo(batch, configuration.getHistoryBatchSize()) > 0) {
+      flushUntilWritten(batch);
+      batch.clear();
+    }
+  }
+
+  /**
+   * Retries whatever couldn't be written because MySQL was unreachable, with backoff, until it is written. Nothing queued after it is written first.
+   */
+  private void flushUntilWritten(List<HistoryWrite> batch) {
+    List<HistoryWrite> unwritten = flush(batch);
+    long backoffMillis = configuration.getHistoryRetryDelayMillis();
+
+    try {
+      while (!unwritten.isEmpty()) {
+        numRetrying = unwritten.size();
+        retriedBatches.mark();
+
+        LOG.warn(String.format("Couldn't reach MySQL to write %s history writes, retrying in %sms", unwritten.size(), backoffMillis));
+
+        Thread.sleep(backoffMillis);
+
+        backoffMillis = Math.min(backoffMillis * 2, configuration.getHistoryMaxRetryDelayMillis());
+        unwritten = flush(unwritten);
+      }
+    } catch (InterruptedException ie) {
+      LOG.error(String.format("Interrupted while retrying, dropped %s history writes", unwritten.size()));
+      droppedWrites.mark(unwritten.size());
+      Thread.currentThread().interrupt();
+    } finally {
+      numRetrying = 0;
+    }
+  }
+
+  /**
+   * Inserts go first so that the updates in the same batch find their rows. Returns the writes that weren't written because MySQL couldn't be reached,
+   * in order - once one type fails that way, the types after it aren't attempted.
+   */
+  private List<HistoryWrite> flush(List<HistoryWrite> batch) {
+    final long start = System.currentTimeMillis();
+    final Timer.Context context = flushTimer.time();
+    final List<HistoryWrite> unwritten = Lists.newArrayList();
+
+    try {
+      for (HistoryWriteType type : HistoryWriteType.values()) {
+        if (!unwritten.isEmpty()) {
+          unwritten.addAll(getWrites(type, batch));
+          continue;
+        }
+
+        try {
+          unwritten.addAll(flush(type, getWrites(type, batch)));
+        } catch (Throwable t) {
+          LOG.error(String.format("Unexpected error while flushing %s history writes", type), t);
+        }
+      }
+    } finally {
+      context.stop();
+    }
+
+    LOG.debug(String.format("Flushed %s of %s history writes in %sms", batch.size() - unwritten.size(), batch.size(), System.currentTimeMillis() - start));
+
+    return unwritten;
+  }
+
+  private List<HistoryWrite> getWrites(HistoryWriteType type, List<HistoryWrite> batch) {
+    final List<HistoryWrite> writes = Lists.newArrayList();
+
+    for (HistoryWrite write : batch) {
+      if (write.type == type) {
+        writes.add(write);
+      }
+    }
+
+    return writes;
+  }
+
+  private List<HistoryWrite> flush(HistoryWriteType type, List<HistoryWrite> writes) {
+    if (writes.isEmpty()) {
+      return writes;
+    }
+
+    try {
+      switch (type) {
+        case TASK_HISTORY:
+          flushTaskHistory(writes);
+          break;
+        case TASK_UPDATE:
+          flushTaskUpdates(writes);
+          break;
+        case TASK_STATUS:
+          flushTaskStatuses(writes);
+          break;
+        case TASK_DIRECTORY:
+          flushTaskDirectories(writes);
+          break;
+      }
+
+      return Lists.newArrayList();
+    } catch (Throwable t) {
+      if (isUnavailable(t)) {
+        return writes;
+      }
+
+      return writeIndividually(writes, t);
+    }
+  }
+
+  /**
+   * Connection failures and transient errors (timeouts, deadlocks) are worth retrying whole - anything else is a problem with the data.
+   */
+  private boolean isUnavailable(Throwable t) {
+    for (Throwable cause : Throwables.getCausalChain(t)) {
+      if (cause instanceof UnableToObtainConnectionException || cause instanceof SQLRecoverableException || cause instanceof SQLTransientException) {
+        return true;
+      }
+
+      if (cause instanceof SQLException && ((SQLException) cause).getSQLState() != null) {
+        final String sqlState = ((SQLException) cause).getSQLState();
+
+        // connection exceptions and transaction rollbacks
+        if (sqlState.startsWith("08") || sqlState.startsWith("40")) {
+          return true;
+        }
+      }
+    }
+
+    return false;
+  }
+
+  private void flushTaskHistory(List<HistoryWrite> writes) {
+    final List<String> requestIds = Lists.newArrayList();
+    final List<String> taskIds = Lists.newArrayList();
+    final List<byte[]> tasks = Lists.newArrayList();
+    final List<String> statuses = Lists.newArrayList();
+    final List<Date> createdAts = Lists.newArrayList();
+
+    for (HistoryWrite write : writes) {
+      try {
+        tasks.add(write.task.get().getAsBytes(objectMapper));
+      } catch (SingularityJsonException jpe) {
+        LOG.warn(String.format("Couldn't insert task history for task %s due to json exception", write.taskId), jpe);
+        continue;
+      }
+
+      requestIds.add(write.task.get().getTaskRequest().getRequest().getId());
+      taskIds.add(write.taskId);
+      statuses.add(write.status);
+      createdAts.add(write.timestamp);
+    }
+
+    if (taskIds.isEmpty()) {
+      return;
+    }
+
+    history.insertTaskHistoryBatch(requestIds, taskIds, tasks, statuses, createdAts);
+  }
+
+  private void flushTaskUpdates(List<HistoryWrite> writes) {
+    final List<String> taskIds = Lists.newArrayList();
+    final List<String> statuses = Lists.newArrayList();
+    final List<String> messages = Lists.newArrayList();
+    final List<Date> createdAts = Lists.newArrayList();
+
+    for (HistoryWrite write : writes) {
+      taskIds.add(write.taskId);
+      statuses.add(write.status);
+      messages.add(write.message.orNull());
+      createdAts.add(write.timestamp);
+    }
+
+    history.insertTaskUpdateBatch(taskIds, statuses, messages, createdAts);
+  }
+
+  private void flushTaskStatuses(List<HistoryWrite> writes) {
+    final List<String> taskIds = Lists.newArrayList();
+    final List<String> statuses = Lists.newArrayList();
+    final List<Date> updatedAts = Lists.newArrayList();
+
+    for (HistoryWrite write : writes) {
+      taskIds.add(write.taskId);
+      statuses.add(write.status);
+      updatedAts.add(write.timestamp);
+    }
+
+    history.updateTaskStatusBatch(taskIds, statuses, updatedAts);
+  }
+
+  private void flushTaskDirectories(List<HistoryWrite> writes) {
+    final List<String> taskIds = Lists.newArrayList();
+    final List<String> directories = Lists.newArrayList();
+
+    for (HistoryWrite write : writes) {
+      taskIds.add(write.taskId);
+      directories.add(write.message.get());
+    }
+
+    history.updateTaskDirectoryBatch(taskIds, directories);
+  }
+
+  /**
+   * Batches are transactional, so a failed batch wrote nothing and every row in it can be retried. Returns the rows from the first one that failed
+   * because MySQL couldn't be reached, which are left for the batch retry.
+   */
+  private List<HistoryWrite> writeIndividually(List<HistoryWrite> writes, Throwable cause) {
+    LOG.warn(String.format("Batch of %s %s history writes failed, retrying individually", writes.size(), writes.get(0).type), cause);
+
+    for (int i = 0; i < writes.size(); i++) {
+      final HistoryWrite write = writes.get(i);
+
+      try {
+        writeSingle(write);
+      } catch (Throwable t) {
+        if (isUnavailable(t)) {
+          return Lists.newArrayList(writes.subList(i, writes.size()));
+        }
+
+        failedWrites.mark();
+
+        LOG.error(String.format("Couldn't write %s history for %s", write.type, write.taskId), t);
+      }
+    }
+
+    return Lists.newArrayList();
+  }
+
+  private void writeSingle(HistoryWrite write) {
+    switch (write.type) {
+      case TASK_HISTORY:
+        delegate.saveTaskHistory(write.task.get(), write.status);
+        break;
+      case TASK_UPDATE:
+        delegate.saveTaskUpdate(write.taskId, write.status, write.message, write.timestamp);
+        break;
+      case TASK_STATUS:
+        delegate.updateTaskHistory(write.taskId, write.status, write.timestamp);
+        break;
+      case TASK_DIRECTORY:
+        delegate.updateTaskDirectory(write.taskId, write.message.get());
+        break;
+    }
+  }
+
+  public void stop() {
+    stopped = true;
+
+    flusher.shutdown();
+
+    try {
+      if (!flusher.awaitTermination(configuration.getHistoryDrainTimeoutSeconds(), TimeUnit.SECONDS)) {
+        LOG.warn(String.format("History writer didn't finish draining after %s seconds, %s writes remain (%s waiting to be retried)", configuration.getHistoryDrainTimeoutSeconds(),
+            queue.size() + numRetrying, numRetrying));
+        return;
+      }
+    } catch (InterruptedException ie) {
+      LOG.warn("Interrupted while waiting for history writer to drain");
+      Thread.currentThread().interrupt();
+      return;
+    }
+
+    // anything enqueued while the flusher was exiting
+    synchronized (flushLock) {
+      drainQueue();
+    }
+
+    LOG.info("History writer drained");
+  }
+
+}
@@ -4,6 +4,7 @@ import java.util.Date;
 import java.util.List;
 
 import org.skife.jdbi.v2.sqlobject.Bind;
+import org.skife.jdbi.v2.sqlobject.SqlBatch;
 import org.skife.jdbi.v2.sqlobject.SqlQuery;
 import org.skife.jdbi.v2.sqlobject.SqlUpdate;
 import org.skife.jdbi.v2.sqlobject.customizers.Mapper;
@@ -33,6 +34,18 @@ public interface HistoryJDBI {
   @SqlUpdate("UPDATE taskHistory SET directory = :directory WHERE taskId = :taskId")
   void updateTaskDirectory(@Bind("taskId") String taskId, @Bind("directory") String directory);
   
+  @SqlBatch(transactional = true, value = "INSERT INTO taskHistory (requestId, taskId, task, status, createdAt) VALUES (:requestId, :taskId, :task, :status, :createdAt)")
+  void insertTaskHistoryBatch(@Bind("requestId") List<String> requestIds, @Bind("taskId") List<String> taskIds, @Bind("task") List<byte[]> tasks, @Bind("status") List<String> statuses, @Bind("createdAt") List<Date> createdAts);
+  
+  @SqlBatch(transactional = true, value = "INSERT INTO taskUpdates (taskId, status, message, createdAt) VALUES (:taskId, :status, :message, :createdAt)")
+  void insertTaskUpdateBatch(@Bind("taskId") List<String> taskIds, @Bind("status") List<String> statuses, @Bind("message") List<String> messages, @Bind("createdAt") List<Date> createdAts);
+  
+  @SqlBatch(transactional = true, value = "UPDATE taskHistory SET lastTaskStatus = :lastStatus, updatedAt = :updatedAt WHERE taskId = :taskId")
+  void updateTaskStatusBatch(@Bind("taskId") List<String> taskIds, @Bind("lastStatus") List<String> statuses, @Bind("updatedAt") List<Date> updatedAts);
+  
+  @SqlBatch(transactional = true, value = "UPDATE taskHistory SET directory = :directory WHERE taskId = :taskId")
+  void updateTaskDirectoryBatch(@Bind("taskId") List<String> taskIds, @Bind("directory") List<String> directories);
+  
   @Mapper(SingularityTaskUpdateMapper.class)
   @SqlQuery("SELECT status, message, createdAt FROM taskUpdates WHERE taskId = :taskId")
   List<SingularityTaskHistoryUpdate> getTaskUpdates(@Bind("taskId") String taskId);
@@ -0,0 +1,142 @@
+package com.hubspot.singularity.hooks;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.Lists;
+import com.google.inject.Inject;
+import com.hubspot.singularity.SingularityEvent;
+import com.hubspot.singularity.config.SingularityConfiguration;
+
+/**
+ * The last eventLogSize events in a ring, so that stream readers can resume from an offset without anything being persisted. Readers that fall further
+ * behind than the ring holds resume from the oldest event still held. Offsets restart at 0 with every process, so the epoch (when this log was created)
+ * tells readers whether an offset they hold came from this log.
+ */
+public class SingularityEventLog {
+
+  private final static Logger LOG = LoggerFactory.getLogger(SingularityEventLog.class);
+
+  private final SingularityEvent[] events;
+  private final Meter appended;
+  private final AtomicInteger openStreams;
+  private final int maxStreams;
+  private final long epoch;
+
+  private long nextOffset;
+
+  @Inject
+  public SingularityEventLog(SingularityConfiguration configuration, MetricRegistry metrics) {
+    this.events = new SingularityEvent[Math.max(1, configuration.getEventLogSize())];
+    this.appended = metrics.meter(MetricRegistry.name(SingularityEventLog.class, "appended"));
+    this.openStreams = new AtomicInteger();
+    this.maxStreams = configuration.getMaxEventStreams();
+    this.epoch = System.currentTimeMillis();
+
+    metrics.register(MetricRegistry.name(SingularityEventLog.class, "nextOffset"), new Gauge<Long>() {
+
+      @Override
+      public Long getValue() {
+        return getNextOffset();
+      }
+
+    });
+
+    metrics.register(MetricRegistry.name(SingularityEventLog.class, "openStreams"), new Gauge<Integer>() {
+
+      @Override
+      public Integer getValue() {
+        return openStreams.get();
+      }
+
+    });
+  }
+
+  /**
+   * Returns false if maxEventStreams streams are already open. Every successful call must be paired with closeStream.
+   */
+  public boolean tryOpenStream() {
+    if (openStreams.incrementAndGet() > maxStreams) {
+      openStreams.decrementAndGet();
+      return false;
+    }
+
+    return true;
+  }
+
+  public void closeStream() {
+    openStreams.decrementAndGet();
+  }
+
+  public void append(SingularityEvent event) {
+    synchronized (events) {
+      events[(int) (nextOffset % events.length)] = event.withOffset(nextOffset);
+      nextOffset++;
+
+      events.notifyAll();
+    }
+
+    appended.mark();
+
+    LOG.trace(String.format("Appended %s", event));
+  }
+
+  public long getEpoch() {
+    return epoch;
+  }
+
+  public long getNextOffset() {
+    synchronized (events) {
+      return nextOffset;
+    }
+  }
+
+  /**
+   * Returns up to max events with offsets at or after fromOffset, oldest first.
+   */
+  public List<SingularityEvent> getEvents(long fromOffset, int max) {
+    synchronized (events) {
+      final long start = Math.max(fromOffset, Math.max(0, nextOffset - events.length));
+
+      if (start >= nextOffset) {
+        return Collections.emptyList();
+      }
+
+      final List<SingularityEvent> found = Lists.newArrayListWithCapacity((int) Math.min(max, nextOffset - start));
+
+      for (long offset = start; offset < nextOffset && found.size() < max; offset++) {
+        found.add(events[(int) (offset % events.length)]);
+      }
+
+      return found;
+    }
+  }
+
+  /**
+   * Like getEvents, but waits up to timeoutMillis for an event at or after fromOffset if there isn't one yet.
+   */
+  public List<SingularityEvent> awaitEvents(long fromOffset, int max, long timeoutMillis) throws InterruptedException {
+    final long deadline = System.currentTimeMillis() + timeoutMillis;
+
+    synchronized (events) {
+      long remaining = timeoutMillis;
+
+      while (nextOffset <= fromOffset && remaining > 0) {
+        TimeUnit.MILLISECONDS.timedWait(events, remaining);
+
+        remaining = deadline - System.currentTimeMillis();
+      }
+
+      return getEvents(fromOffset, max);
+    }
+  }
+
+}
@@ -1,28 +1,50 @@
 package com.hubspot.singularity.hooks;
 
+import java.io.File;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.PathChildrenCache;
+import org.apache.curator.framework.recipes.cache.PathChildrenCache.StartMode;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheEvent;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheListener;
+import org.apache.curator.utils.ZKPaths;
 import org.apache.zookeeper.KeeperException.NoNodeException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.codahale.metrics.MetricRegistry;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Optional;
 import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.io.Closeables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Inject;
 import com.hubspot.mesos.JavaUtils;
 import com.hubspot.singularity.SingularityTaskUpdate;
+import com.hubspot.singularity.SingularityWebhookStats;
+import com.hubspot.singularity.config.SingularityConfiguration;
 import com.hubspot.singularity.data.CuratorManager;
-import com.hubspot.singularity.data.TaskManager;
-import com.ning.http.client.AsyncCompletionHandler;
 import com.ning.http.client.AsyncHttpClient;
-import com.ning.http.client.Response;
 
-public class WebhookManager extends CuratorManager {
+/**
+ * The hook list is kept in memory and refreshed by a PathChildrenCache (without node data) on the hook root, so notifying doesn't read ZK.
+ * Each hook gets its own WebhookQueue, so a slow or failing hook only delays its own deliveries.
+ */
+public class WebhookManager extends CuratorManager implements PathChildrenCacheListener {
 
-  private final static Logger LOG = LoggerFactory.getLogger(TaskManager.class);
+  private final static Logger LOG = LoggerFactory.getLogger(WebhookManager.class);
 
   private static final String HOOK_ROOT_PATH = "/hooks";
   private static final String HOOK_FORMAT_PATH = HOOK_ROOT_PATH + "/%s";
@@ -30,52 +52,181 @@ public class WebhookManager extends CuratorManager {
   private final ObjectMapper objectMapper;
   
   private final AsyncHttpClient asyncHttpClient;
-  private final AsyncCompletionHandler<Response> handler;
+  private final PathChildrenCache pathChildrenCache;
+  private final SingularityConfiguration configuration;
+  private final MetricRegistry metrics;
+  private final ScheduledExecutorService retryExecutor;
+  private final ConcurrentMap<String, WebhookQueue> queues;
+  private final Optional<File> spillDirectory;
   
-  // TODO watch/cache
-  // TODO one async htp client?
+  private volatile List<String> hooks;
+  private volatile boolean initialized;
   
   @Inject
-  public WebhookManager(CuratorFramework curator, ObjectMapper objectMapper) {
+  public WebhookManager(CuratorFramework curator, ObjectMapper objectMapper, SingularityConfiguration configuration, MetricRegistry metrics) {
     super(curator);
     
     this.objectMapper = objectMapper;
+    this.configuration = configuration;
+    this.metrics = metrics;
     
-    asyncHttpClient = new AsyncHttpClient();
-    handler = new AsyncCompletionHandler<Response>() {
-
-      @Override
-      public Response onCompleted(Response response) throws Exception {
-        return response;
-      }
-
-      @Override
-      public void onThrowable(Throwable t) {
-        LOG.warn("Throwable while processing a webhook", t);
-      }
-    };
+    this.asyncHttpClient = new AsyncHttpClient();
+    this.retryExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setDaemon(true).setNameFormat("WebhookRetry-%d").build());
+    this.queues = new ConcurrentHashMap<>();
+    this.spillDirectory = configuration.getWebhookSpillDirectory() == null ? Optional.<File> absent() : Optional.of(new File(configuration.getWebhookSpillDirectory()));
+    
+    this.hooks = Collections.emptyList();
+    this.pathChildrenCache = new PathChildrenCache(curator, HOOK_ROOT_PATH, false);
+    
+    pathChildrenCache.getListenable().addListener(this);
+  }
+  
+  public void start() {
+    LOG.info("Starting webhook cache");
+    
+    try {
+      pathChildrenCache.start(StartMode.POST_INITIALIZED_EVENT);
+    } catch (Exception e) {
+      throw Throwables.propagate(e);
+    }
+  }
+  
+  public void stop() {
+    initialized = false;
+    
+    try {
+      Closeables.close(pathChildrenCache, true);
+    } catch (Exception e) {
+      LOG.warn("While closing webhook cache", e);
+    }
+    
+    retryExecutor.shutdownNow();
+    
+    for (WebhookQueue queue : queues.values()) {
+      queue.close();
+    }
+    
+    asyncHttpClient.close();
+  }
+  
+  @Override
+  public void childEvent(CuratorFramework client, PathChildrenCacheEvent event) throws Exception {
+    switch (event.getType()) {
+      case CHILD_ADDED:
+      case CHILD_REMOVED:
+        if (initialized) {
+          refresh();
+        }
+        break;
+      case INITIALIZED:
+      case CONNECTION_RECONNECTED:
+        refresh();
+        initialized = true;
+        break;
+      default:
+        break;
+    }
+  }
+  
+  private synchronized void refresh() {
+    final List<ChildData> children = pathChildrenCache.getCurrentData();
+    final List<String> decodedHooks = Lists.newArrayListWithCapacity(children.size());
+    
+    for (ChildData child : children) {
+      decodedHooks.add(JavaUtils.urlDecode(ZKPaths.getNodeFromPath(child.getPath())));
+    }
+    
+    hooks = ImmutableList.copyOf(decodedHooks);
+    
+    final Set<String> removed = Sets.newHashSet(queues.keySet());
+    removed.removeAll(hooks);
+    
+    for (String hook : removed) {
+      LOG.info(String.format("Discarding the delivery queue of removed hook %s", hook));
+      
+      queues.remove(hook).discard();
+      metrics.remove(getLatencyMetricName(hook));
+    }
+    
+    for (String hook : hooks) {
+      getQueue(hook);
+    }
+    
+    LOG.debug(String.format("Webhook cache now holds %s hooks", hooks.size()));
   }
   
   public void notify(SingularityTaskUpdate taskUpdate) {
-    for (String hook : getWebhooks()) {
-      LOG.trace(String.format("Sending a hook to %s with data about task %s", hook, taskUpdate.getTask().getTaskId()));
+    final List<String> currentHooks = getWebhooks();
+    
+    if (currentHooks.isEmpty()) {
+      return;
+    }
+    
+    final byte[] body;
+    
+    try {
+      body = taskUpdate.getAsBytes(objectMapper);
+    } catch (Exception e) {
+      LOG.warn(String.format("Exception while serializing update for task %s", taskUpdate.getTask().getTaskId()), e);
+      return;
+    }
+    
+    for (String hook : currentHooks) {
+      LOG.trace(String.format("Queueing a hook to %s with data about task %s", hook, taskUpdate.getTask().getTaskId()));
+      
+      getQueue(hook).add(body);
+    }
+  }
+  
+  private WebhookQueue getQueue(String hook) {
+    WebhookQueue queue = queues.get(hook);
+    
+    if (queue != null) {
+      return queue;
+    }
+    
+    synchronized (queues) {
+      queue = queues.get(hook);
       
-      try {
-        asyncHttpClient.preparePost(hook)
-          .setBody(taskUpdate.getAsBytes(objectMapper))
-          .addHeader("Content-Type", "application/json")
-          .execute(handler);
-      } catch (Exception e) {
-        LOG.warn("Exception while preparing hook: " + hook, e);
+      if (queue == null) {
+        queue = new WebhookQueue(hook, asyncHttpClient, retryExecutor, configuration, spillDirectory, metrics.histogram(getLatencyMetricName(hook)));
+        queues.put(hook, queue);
+        
+        // sends anything recovered from the spill
+        queue.resume();
       }
+      
+      return queue;
+    }
+  }
+  
+  private String getLatencyMetricName(String hook) {
+    return MetricRegistry.name(WebhookManager.class, getHookNodeName(hook), "latencyMillis");
+  }
+  
+  static String getHookNodeName(String hook) {
+    return JavaUtils.urlEncode(hook);
+  }
+  
+  public List<SingularityWebhookStats> getStats() {
+    final List<SingularityWebhookStats> stats = Lists.newArrayListWithCapacity(queues.size());
+    
+    for (Map.Entry<String, WebhookQueue> entry : queues.entrySet()) {
+      stats.add(entry.getValue().getStats());
     }
+    
+    return stats;
   }
   
   private String getHookPath(String uri) {
-    return String.format(HOOK_FORMAT_PATH, JavaUtils.urlEncode(uri));
+    return String.format(HOOK_FORMAT_PATH, getHookNodeName(uri));
   }
   
   public List<String> getWebhooks() {
+    if (initialized) {
+      return hooks;
+    }
+    
     return loadHooks();
   }
   
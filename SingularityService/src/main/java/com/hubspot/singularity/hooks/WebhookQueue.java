@@ -0,0 +1,310 @@
+package com.hubspot.singularity.hooks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Snapshot;
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import com.hubspot.singularity.SingularityWebhookStats;
+import com.hubspot.singularity.config.SingularityConfiguration;
+import com.ning.http.client.AsyncCompletionHandler;
+import com.ning.http.client.AsyncHttpClient;
+import com.ning.http.client.PerRequestConfig;
+import com.ning.http.client.Response;
+
+/**
+ * Delivers payloads to one hook, one request at a time and in order. Payloads beyond webhookQueueSize are spilled to disk when a spill directory is
+ * configured, up to webhookMaxSpillBytes, and otherwise the oldest are dropped. A failed request is retried with exponential backoff before anything
+ * after it is sent, up to webhookMaxRetries times (0 retries forever). Requests the hook rejects with a 4xx other than 408 or 429 aren't retried, and
+ * abandoned payloads are counted rather than kept. When webhookBatchSize is more than 1, up to that many payloads are sent together as a JSON array.
+ */
+class WebhookQueue {
+
+  private final static Logger LOG = LoggerFactory.getLogger(WebhookQueue.class);
+
+  private final String hook;
+  private final AsyncHttpClient asyncHttpClient;
+  private final ScheduledExecutorService retryExecutor;
+  private final SingularityConfiguration configuration;
+  private final Optional<WebhookSpill> spill;
+  private final Histogram latencyMillis;
+
+  private final Deque<byte[]> queue;
+  private List<byte[]> inFlight;
+  private boolean waitingToRetry;
+  private boolean closed;
+
+  private int consecutiveFailures;
+  private int inFlightRetries;
+  private long delivered;
+  private long failures;
+  private long dropped;
+  private long abandoned;
+
+  WebhookQueue(String hook, AsyncHttpClient asyncHttpClient, ScheduledExecutorService retryExecutor, SingularityConfiguration configuration, Optional<File> spillDirectory, Histogram latencyMillis) {
+    this.hook = hook;
+    this.asyncHttpClient = asyncHttpClient;
+    this.retryExecutor = retryExecutor;
+    this.configuration = configuration;
+    this.latencyMillis = latencyMillis;
+    this.queue = new ArrayDeque<>();
+    this.inFlight = null;
+
+    if (spillDirectory.isPresent()) {
+      this.spill = Optional.of(new WebhookSpill(spillDirectory.get(), WebhookManager.getHookNodeName(hook)));
+    } else {
+      this.spill = Optional.absent();
+    }
+  }
+
+  synchronized void add(byte[] payload) {
+    if (closed) {
+      return;
+    }
+
+    if (queue.size() < configuration.getWebhookQueueSize() && (!spill.isPresent() || spill.get().isEmpty())) {
+      queue.addLast(payload);
+    } else if (spill.isPresent() && spill.get().bytes() + payload.length > configuration.getWebhookMaxSpillBytes()) {
+      LOG.debug(String.format("Spill for %s is full (%s bytes), dropping a payload", hook, spill.get().bytes()));
+      dropped++;
+    } else if (spill.isPresent()) {
+      try {
+        spill.get().write(payload);
+      } catch (IOException ioe) {
+        LOG.warn(String.format("Couldn't spill a payload for %s, dropping it", hook), ioe);
+        dropped++;
+      }
+    } else {
+      queue.pollFirst();
+      queue.addLast(payload);
+      dropped++;
+    }
+
+    sendNext();
+  }
+
+  synchronized void resume() {
+    sendNext();
+  }
+
+  private void sendNext() {
+    if (closed || inFlight != null || waitingToRetry) {
+      return;
+    }
+
+    refill();
+
+    if (queue.isEmpty()) {
+      return;
+    }
+
+    final int batchSize = Math.max(1, configuration.getWebhookBatchSize());
+
+    inFlight = Lists.newArrayListWithCapacity(Math.min(batchSize, queue.size()));
+    inFlightRetries = 0;
+
+    while (inFlight.size() < batchSize && !queue.isEmpty()) {
+      inFlight.add(queue.pollFirst());
+    }
+
+    send();
+  }
+
+  private void refill() {
+    if (!spill.isPresent() || spill.get().isEmpty() || queue.size() >= configuration.getWebhookQueueSize()) {
+      return;
+    }
+
+    try {
+      spill.get().readInto(queue, configuration.getWebhookQueueSize() - queue.size());
+    } catch (IOException ioe) {
+      LOG.warn(String.format("While reading spilled payloads for %s", hook), ioe);
+    }
+  }
+
+  private void send() {
+    final long start = System.currentTimeMillis();
+
+    final PerRequestConfig requestConfig = new PerRequestConfig();
+    requestConfig.setRequestTimeoutInMs((int) configuration.getWebhookRequestTimeoutMillis());
+
+    try {
+      asyncHttpClient.preparePost(hook)
+        .setBody(getBody(inFlight))
+        .addHeader("Content-Type", "application/json")
+        .setPerRequestConfig(requestConfig)
+        .execute(new AsyncCompletionHandler<Response>() {
+
+          @Override
+          public Response onCompleted(Response response) throws Exception {
+            if (response.getStatusCode() >= 200 && response.getStatusCode() < 300) {
+              succeeded(System.currentTimeMillis() - start);
+            } else {
+              failed(String.format("status code %s", response.getStatusCode()), null, isRetryable(response.getStatusCode()));
+            }
+
+            return response;
+          }
+
+          @Override
+          public void onThrowable(Throwable t) {
+            failed(t.getMessage(), t, true);
+          }
+
+        });
+    } catch (Throwable t) {
+      failed(t.getMessage(), t, true);
+    }
+  }
+
+  private boolean isRetryable(int statusCode) {
+    return statusCode < 400 || statusCode >= 500 || statusCode == 408 || statusCode == 429;
+  }
+
+  private byte[] getBody(List<byte[]> payloads) throws IOException {
+    if (configuration.getWebhookBatchSize() <= 1) {
+      return payloads.get(0);
+    }
+
+    final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+    body.write('[');
+
+    for (int i = 0; i < payloads.size(); i++) {
+      if (i > 0) {
+        body.write(',');
+      }
+
+      body.write(payloads.get(i));
+    }
+
+    body.write(']');
+
+    return body.toByteArray();
+  }
+
+  private synchronized void succeeded(long millis) {
+    latencyMillis.update(millis);
+
+    delivered += inFlight.size();
+    consecutiveFailures = 0;
+    inFlight = null;
+
+    sendNext();
+  }
+
+  private synchronized void failed(String reason, Throwable t, boolean retryable) {
+    if (inFlight == null) {
+      return;
+    }
+
+    failures++;
+    consecutiveFailures++;
+
+    if (!retryable || (configuration.getWebhookMaxRetries() > 0 && inFlightRetries >= configuration.getWebhookMaxRetries())) {
+      LOG.error(String.format("Abandoning %s payload(s) for %s after %s attempt(s): %s", inFlight.size(), hook, inFlightRetries + 1, reason), t);
+
+      abandoned += inFlight.size();
+      inFlight = null;
+
+      sendNext();
+      return;
+    }
+
+    inFlightRetries++;
+
+    final long backoffMillis = Math.min(configuration.getWebhookMaxRetryDelayMillis(), configuration.getWebhookRetryDelayMillis() << Math.min(consecutiveFailures - 1, 20));
+
+    if (t != null) {
+      LOG.warn(String.format("Couldn't deliver %s payload(s) to %s (%s in a row), retrying in %sms", inFlight.size(), hook, consecutiveFailures, backoffMillis), t);
+    } else {
+      LOG.warn(String.format("Couldn't deliver %s payload(s) to %s: %s (%s in a row), retrying in %sms", inFlight.size(), hook, reason, consecutiveFailures, backoffMillis));
+    }
+
+    if (closed) {
+      return;
+    }
+
+    waitingToRetry = true;
+
+    retryExecutor.schedule(new Runnable() {
+
+      @Override
+      public void run() {
+        retry();
+      }
+
+    }, backoffMillis, TimeUnit.MILLISECONDS);
+  }
+
+  private synchronized void retry() {
+    waitingToRetry = false;
+
+    if (closed || inFlight == null) {
+      return;
+    }
+
+    send();
+  }
+
+  synchronized SingularityWebhookStats getStats() {
+    final Snapshot latency = latencyMillis.getSnapshot();
+
+    return new SingularityWebhookStats(hook, queue.size(), spill.isPresent() ? spill.get().size() : 0, inFlight == null ? 0 : inFlight.size(), delivered, failures, dropped, abandoned,
+        consecutiveFailures, latency.getMean(), latency.get99thPercentile(), latency.getMax());
+  }
+
+  /**
+   * Stops delivery. Undelivered payloads, including an unacknowledged request, are written to the spill so they are sent after a restart - delivery is at
+   * least once, and payloads held in memory are sent after those already spilled.
+   */
+  synchronized void close() {
+    closed = true;
+
+    if (!spill.isPresent()) {
+      return;
+    }
+
+    try {
+      if (inFlight != null) {
+        for (byte[] payload : inFlight) {
+          spill.get().write(payload);
+        }
+      }
+
+      for (byte[] payload : queue) {
+        spill.get().write(payload);
+      }
+    } catch (IOException ioe) {
+      LOG.warn(String.format("Couldn't spill undelivered payloads for %s", hook), ioe);
+    }
+
+    queue.clear();
+    spill.get().close();
+  }
+
+  /**
+   * Stops delivery and discards everything queued, for a hook that was removed.
+   */
+  synchronized void discard() {
+    closed = true;
+
+    queue.clear();
+
+    if (spill.isPresent()) {
+      spill.get().delete();
+    }
+  }
+
+}
@@ -0,0 +1,236 @@
+package com.hubspot.singularity.hooks;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.io.Closeables;
+
+/**
+ * Length-prefixed webhook payloads in segment files under the spill directory, read back oldest first. Writes go to the newest segment and reads come
+ * from the oldest, so a segment is never read and written at the same time. Segments left by a previous run are picked up when the spill is created.
+ * Every write is flushed to the file, so spilled payloads survive the process dying but not the host - segments are never fsynced.
+ * Not thread safe - callers synchronize.
+ */
+class WebhookSpill {
+
+  private final static Logger LOG = LoggerFactory.getLogger(WebhookSpill.class);
+
+  private final static String SEGMENT_SUFFIX = ".spill";
+  private final static int RECORD_HEADER_BYTES = 4;
+  private final static AtomicLong SEGMENT_SEQUENCE = new AtomicLong(System.currentTimeMillis() * 1000);
+
+  private final File directory;
+  private final String prefix;
+  private final Deque<File> segments;
+
+  private DataOutputStream writer;
+  private DataInputStream reader;
+  private long numRecords;
+  private long numBytes;
+
+  WebhookSpill(File directory, String name) {
+    this.directory = directory;
+    this.prefix = name + "-";
+    this.segments = new ArrayDeque<>();
+
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      LOG.warn(String.format("Couldn't create webhook spill directory %s", directory));
+    }
+
+    final File[] existing = directory.listFiles(new FilenameFilter() {
+
+      @Override
+      public boolean accept(File dir, String fileName) {
+        return fileName.startsWith(prefix) && fileName.endsWith(SEGMENT_SUFFIX);
+      }
+
+    });
+
+    if (existing != null) {
+      Arrays.sort(existing);
+
+      for (File segment : existing) {
+        segments.add(segment);
+        numRecords += countRecords(segment);
+        numBytes += segment.length();
+      }
+
+      if (numRecords > 0) {
+        LOG.info(String.format("Recovered %s spilled webhook payloads for %s from %s segments", numRecords, name, existing.length));
+      }
+    }
+  }
+
+  boolean isEmpty() {
+    return numRecords == 0;
+  }
+
+  long size() {
+    return numRecords;
+  }
+
+  long bytes() {
+    return numBytes;
+  }
+
+  void write(byte[] payload) throws IOException {
+    if (writer == null) {
+      final File segment = new File(directory, String.format("%s%020d%s", prefix, SEGMENT_SEQUENCE.incrementAndGet(), SEGMENT_SUFFIX));
+
+      writer = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(segment)));
+      segments.addLast(segment);
+    }
+
+    writer.writeInt(payload.length);
+    writer.write(payload);
+    writer.flush();
+
+    numRecords++;
+    numBytes += RECORD_HEADER_BYTES + payload.length;
+  }
+
+  /**
+   * Moves up to max payloads, oldest first, into the given queue.
+   */
+  int readInto(Deque<byte[]> queue, int max) throws IOException {
+    int read = 0;
+
+    while (read < max && !segments.isEmpty()) {
+      if (reader == null) {
+        if (segments.size() == 1 && writer != null) {
+          // don't read the segment still being written, start a new one for later writes
+          Closeables.close(writer, false);
+          writer = null;
+        }
+
+        reader = new DataInputStream(new BufferedInputStream(new FileInputStream(segments.peekFirst())));
+      }
+
+      final byte[] payload = readRecord(reader);
+
+      if (payload == null) {
+        Closeables.close(reader, true);
+        reader = null;
+
+        final File segment = segments.pollFirst();
+
+        if (!segment.delete()) {
+          LOG.warn(String.format("Couldn't delete webhook spill segment %s", segment));
+        }
+
+        continue;
+      }
+
+      queue.addLast(payload);
+      numRecords--;
+      numBytes -= RECORD_HEADER_BYTES + payload.length;
+      read++;
+    }
+
+    if (segments.isEmpty()) {
+      // a truncated segment holds fewer payloads than were counted
+      numRecords = 0;
+      numBytes = 0;
+    }
+
+    return read;
+  }
+
+  void close() {
+    try {
+      Closeables.close(writer, true);
+      Closeables.close(reader, true);
+    } catch (IOException ioe) {
+      LOG.warn("While closing webhook spill", ioe);
+    }
+
+    writer = null;
+    reader = null;
+  }
+
+  /**
+   * Closes and removes every segment, for hooks that were removed.
+   */
+  void delete() {
+    close();
+
+    for (File segment : segments) {
+      if (!segment.delete()) {
+        LOG.warn(String.format("Couldn't delete webhook spill segment %s", segment));
+      }
+    }
+
+    segments.clear();
+    numRecords = 0;
+    numBytes = 0;
+  }
+
+  private static byte[] readRecord(DataInputStream in) throws IOException {
+    final int length;
+
+    try {
+      length = in.readInt();
+    } catch (EOFException eofe) {
+      return null;
+    }
+
+    final byte[] payload = new byte[length];
+
+    try {
+      in.readFully(payload);
+    } catch (EOFException eofe) {
+      LOG.warn("Found a truncated webhook payload at the end of a spill segment, skipping it");
+      return null;
+    }
+
+    return payload;
+  }
+
+  private static long countRecords(File segment) {
+    long count = 0;
+
+    DataInputStream in = null;
+
+    try {
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(segment)));
+
+      while (true) {
+        final int length = in.readInt();
+
+        if (in.skipBytes(length) < length) {
+          break;
+        }
+
+        count++;
+      }
+    } catch (EOFException eofe) {
+      // end of segment
+    } catch (IOException ioe) {
+      LOG.warn(String.format("While counting payloads in spill segment %s", segment), ioe);
+    } finally {
+      try {
+        Closeables.close(in, true);
+      } catch (IOException ioe) {
+        // swallowed
+      }
+    }
+
+    return count;
+  }
+
+}
@@ -0,0 +1,123 @@
+package com.hubspot.singularity.mesos;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Ordering;
+import com.google.common.collect.Sets;
+import com.hubspot.mesos.Resources;
+import com.hubspot.singularity.SingularityTaskRequest;
+
+/**
+ * Buckets due task requests by their resource shape, so that an offer only has to look at the buckets it can satisfy.
+ * Each bucket keeps the nextRunAt priority order, and candidates are merged back into that order across buckets.
+ */
+public class SingularityDueTaskIndex {
+
+  private final Resources defaultResources;
+  private final Map<Resources, NavigableSet<SingularityTaskRequest>> buckets;
+
+  private int size;
+
+  public SingularityDueTaskIndex(List<SingularityTaskRequest> dueTasks, Resources defaultResources) {
+    this.defaultResources = defaultResources;
+    this.buckets = Maps.newHashMap();
+
+    for (SingularityTaskRequest taskRequest : dueTasks) {
+      final Resources resources = getResources(taskRequest);
+
+      NavigableSet<SingularityTaskRequest> bucket = buckets.get(resources);
+
+      if (bucket == null) {
+        bucket = Sets.newTreeSet();
+        buckets.put(resources, bucket);
+      }
+
+      if (bucket.add(taskRequest)) {
+        size++;
+      }
+    }
+  }
+
+  public Resources getResources(SingularityTaskRequest taskRequest) {
+    if (taskRequest.getRequest().getResources() != null) {
+      return taskRequest.getRequest().getResources();
+    }
+
+    return defaultResources;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public int getNumBuckets() {
+    return buckets.size();
+  }
+
+  /**
+   * Due tasks that fit within the available resources, in priority order. The index must not be modified while iterating.
+   */
+  public Iterator<SingularityTaskRequest> getCandidates(Resources available) {
+    return getCandidates(available, null);
+  }
+
+  /**
+   * Due tasks that fit within the available resources and come after the given task in priority order, for resuming a pass once the available
+   * resources have shrunk.
+   */
+  public Iterator<SingularityTaskRequest> getCandidatesAfter(Resources available, SingularityTaskRequest after) {
+    return getCandidates(available, after);
+  }
+
+  private Iterator<SingularityTaskRequest> getCandidates(Resources available, SingularityTaskRequest after) {
+    final List<Iterator<SingularityTaskRequest>> fitting = Lists.newArrayListWithCapacity(buckets.size());
+
+    for (Map.Entry<Resources, NavigableSet<SingularityTaskRequest>> bucket : buckets.entrySet()) {
+      if (!available.fits(bucket.getKey())) {
+        continue;
+      }
+
+      if (after == null) {
+        fitting.add(bucket.getValue().iterator());
+      } else {
+        fitting.add(bucket.getValue().tailSet(after, false).iterator());
+      }
+    }
+
+    if (fitting.isEmpty()) {
+      return Collections.<SingularityTaskRequest> emptyIterator();
+    }
+
+    return Iterators.mergeSorted(fitting, Ordering.<SingularityTaskRequest> natural());
+  }
+
+  public void removeAll(Collection<SingularityTaskRequest> taskRequests) {
+    for (SingularityTaskRequest taskRequest : taskRequests) {
+      final Resources resources = getResources(taskRequest);
+      final NavigableSet<SingularityTaskRequest> bucket = buckets.get(resources);
+
+      if (bucket == null || !bucket.remove(taskRequest)) {
+        continue;
+      }
+
+      size--;
+
+      if (bucket.isEmpty()) {
+        buckets.remove(resources);
+      }
+    }
+  }
+
+}
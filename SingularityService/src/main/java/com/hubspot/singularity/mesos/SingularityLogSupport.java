@@ -1,61 +1,178 @@
 package com.hubspot.singularity.mesos;
 
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Inject;
 import com.hubspot.mesos.json.MesosExecutorObject;
 import com.hubspot.mesos.json.MesosSlaveFrameworkObject;
 import com.hubspot.mesos.json.MesosSlaveStateObject;
 import com.hubspot.mesos.json.MesosTaskObject;
 import com.hubspot.singularity.SingularityTask;
+import com.hubspot.singularity.config.SingularityConfiguration;
 import com.hubspot.singularity.data.history.HistoryManager;
 
+/**
+ * Resolves task sandbox directories in the background. Lookups for the same slave within logFetchCoalesceMillis share a single state.json fetch,
+ * and tasks that couldn't be resolved are retried with a growing delay.
+ */
 public class SingularityLogSupport {
 
   private final static Logger LOG = LoggerFactory.getLogger(SingularityLogSupport.class);
 
   private final MesosClient mesosClient;
   private final HistoryManager historyManager;
-  
+  private final SingularityConfiguration configuration;
+
+  private final ScheduledExecutorService executorService;
+  private final Map<String, List<DirectoryLookup>> pendingLookupsByHost;
+
   @Inject
-  public SingularityLogSupport(MesosClient mesosClient, HistoryManager historyManager) {
+  public SingularityLogSupport(MesosClient mesosClient, HistoryManager historyManager, SingularityConfiguration configuration) {
     this.mesosClient = mesosClient;
     this.historyManager = historyManager;
+    this.configuration = configuration;
+
+    this.executorService = new ScheduledThreadPoolExecutor(configuration.getLogFetchMaxThreads(), new ThreadFactoryBuilder().setDaemon(true).setNameFormat("SingularityLogSupport-%d").build());
+    this.pendingLookupsByHost = Maps.newHashMap();
+  }
+
+  private static class DirectoryLookup {
+
+    private final SingularityTask task;
+    private final int attempt;
+
+    private DirectoryLookup(SingularityTask task, int attempt) {
+      this.task = task;
+      this.attempt = attempt;
+    }
+
   }
 
   public void notifyRunning(SingularityTask task) {
+    enqueue(new DirectoryLookup(task, 0), configuration.getLogFetchCoalesceMillis());
+  }
+
+  private void enqueue(DirectoryLookup lookup, long delayMillis) {
+    final String host = lookup.task.getOffer().getHostname();
+
+    synchronized (pendingLookupsByHost) {
+      if (executorService.isShutdown()) {
+        LOG.debug(String.format("Not resolving directory for task %s, log support is stopped", lookup.task.getTaskId()));
+        return;
+      }
+
+      List<DirectoryLookup> pending = pendingLookupsByHost.get(host);
+
+      if (pending != null) {
+        pending.add(lookup);
+        return;
+      }
+
+      pending = Lists.newArrayList(lookup);
+      pendingLookupsByHost.put(host, pending);
+
+      executorService.schedule(new Runnable() {
+
+        @Override
+        public void run() {
+          resolve(host);
+        }
+
+      }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private void resolve(String host) {
     final long now = System.currentTimeMillis();
-    
-    final String slaveUri = mesosClient.getSlaveUri(task.getOffer().getHostname());
-    
-    LOG.info(String.format("Fetching slave data to find log directory for task %s from uri %s", task.getTaskId(), slaveUri));
-  
-    MesosSlaveStateObject slaveState = mesosClient.getSlaveState(slaveUri);
-    
-    String directory = null;
-    
+
+    final List<DirectoryLookup> lookups;
+
+    synchronized (pendingLookupsByHost) {
+      lookups = pendingLookupsByHost.remove(host);
+    }
+
+    if (lookups == null || lookups.isEmpty()) {
+      return;
+    }
+
+    final String slaveUri = mesosClient.getSlaveUri(host);
+
+    LOG.info(String.format("Fetching slave data to find log directories for %s task(s) from uri %s", lookups.size(), slaveUri));
+
+    Map<String, String> directories = null;
+
+    try {
+      directories = getDirectoriesByTaskId(mesosClient.getSlaveState(slaveUri));
+    } catch (Throwable t) {
+      LOG.warn(String.format("Couldn't fetch slave state from %s", slaveUri), t);
+    }
+
+    for (DirectoryLookup lookup : lookups) {
+      final String taskId = lookup.task.getTaskId().getId();
+      final String directory = directories == null ? null : directories.get(taskId);
+
+      if (directory == null) {
+        retry(lookup);
+        continue;
+      }
+
+      LOG.debug(String.format("Found a directory %s for task %s", directory, taskId));
+
+      historyManager.updateTaskDirectory(taskId, directory);
+    }
+
+    LOG.trace(String.format("Resolved directories for %s task(s) on %s in %sms", lookups.size(), host, System.currentTimeMillis() - now));
+  }
+
+  private Map<String, String> getDirectoriesByTaskId(MesosSlaveStateObject slaveState) {
+    final Map<String, String> directories = Maps.newHashMap();
+
     for (MesosSlaveFrameworkObject slaveFramework : slaveState.getFrameworks()) {
       for (MesosExecutorObject executor : slaveFramework.getExecutors()) {
         for (MesosTaskObject executorTask : executor.getTasks()) {
-          if (task.getTaskId().getId().equals(executorTask.getId())) {
-            directory = executor.getDirectory();
-            break;
-          }
+          directories.put(executorTask.getId(), executor.getDirectory());
         }
       }
     }
-    
-    if (directory == null) {
-      LOG.warn(String.format("Couldn't find matching executor for task %s", task.getTaskId()));
+
+    return directories;
+  }
+
+  private void retry(DirectoryLookup lookup) {
+    final int attempt = lookup.attempt + 1;
+
+    if (attempt > configuration.getLogFetchMaxRetries()) {
+      LOG.warn(String.format("Couldn't find matching executor for task %s after %s attempt(s)", lookup.task.getTaskId(), attempt));
       return;
     }
-    
-    LOG.debug(String.format("Found a directory %s for task %s", directory, task.getTaskId().getId()));
-      
-    historyManager.updateTaskDirectory(task.getTaskId().getId(), directory);
-  
-    LOG.trace(String.format("Updated task directory in %sms", System.currentTimeMillis() - now));
+
+    final long delayMillis = configuration.getLogFetchRetryDelayMillis() * (1L << (attempt - 1));
+
+    LOG.debug(String.format("Couldn't find directory for task %s, retrying in %sms", lookup.task.getTaskId(), delayMillis));
+
+    enqueue(new DirectoryLookup(lookup.task, attempt), delayMillis);
   }
-  
+
+  public void stop() {
+    synchronized (pendingLookupsByHost) {
+      executorService.shutdownNow();
+
+      if (!pendingLookupsByHost.isEmpty()) {
+        LOG.info(String.format("Dropping pending directory lookups for %s host(s)", pendingLookupsByHost.size()));
+      }
+
+      pendingLookupsByHost.clear();
+    }
+  }
+
 }
@@ -1,7 +1,10 @@
 package com.hubspot.singularity.mesos;
 
+import java.util.Collections;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.commons.lang.time.DurationFormatUtils;
@@ -14,12 +17,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Optional;
-import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.inject.Inject;
 import com.hubspot.mesos.JavaUtils;
 import com.hubspot.mesos.MesosUtils;
 import com.hubspot.mesos.Resources;
+import com.hubspot.singularity.SingularityEvent;
 import com.hubspot.singularity.SingularityTask;
 import com.hubspot.singularity.SingularityTaskId;
 import com.hubspot.singularity.SingularityTaskRequest;
@@ -27,6 +32,7 @@ import com.hubspot.singularity.SingularityTaskUpdate;
 import com.hubspot.singularity.config.MesosConfiguration;
 import com.hubspot.singularity.data.TaskManager;
 import com.hubspot.singularity.data.history.HistoryManager;
+import com.hubspot.singularity.hooks.SingularityEventLog;
 import com.hubspot.singularity.hooks.WebhookManager;
 import com.hubspot.singularity.mesos.SingularityRackManager.RackCheckState;
 import com.hubspot.singularity.scheduler.SingularityScheduler;
@@ -41,18 +47,20 @@ public class SingularityMesosScheduler implements Scheduler {
   private final HistoryManager historyManager;
   private final SingularityMesosTaskBuilder mesosTaskBuilder;
   private final WebhookManager webhookManager;
+  private final SingularityEventLog eventLog;
   private final SingularityRackManager rackManager;
   private final SingularityLogSupport logSupport;
   
   @Inject
-  public SingularityMesosScheduler(MesosConfiguration mesosConfiguration, TaskManager taskManager, SingularityScheduler scheduler, HistoryManager historyManager, WebhookManager webhookManager, SingularityRackManager rackManager,
-      SingularityMesosTaskBuilder mesosTaskBuilder, SingularityLogSupport logSupport) {
+  public SingularityMesosScheduler(MesosConfiguration mesosConfiguration, TaskManager taskManager, SingularityScheduler scheduler, HistoryManager historyManager, WebhookManager webhookManager, SingularityEventLog eventLog,
+      SingularityRackManager rackManager, SingularityMesosTaskBuilder mesosTaskBuilder, SingularityLogSupport logSupport) {
     DEFAULT_RESOURCES = new Resources(mesosConfiguration.getDefaultCpus(), mesosConfiguration.getDefaultMemory(), 0);
     this.taskManager = taskManager;
     this.rackManager = rackManager;
     this.scheduler = scheduler;
     this.historyManager = historyManager;
     this.webhookManager = webhookManager;
+    this.eventLog = eventLog;
     this.mesosTaskBuilder = mesosTaskBuilder;
     this.logSupport = logSupport;
   }
@@ -73,10 +81,7 @@ public class SingularityMesosScheduler implements Scheduler {
 
     final long start = System.currentTimeMillis();
     
-    final List<SingularityTaskId> activeTasks = taskManager.getActiveTaskIds();
-
-    scheduler.checkForDecomissions(activeTasks);
-    scheduler.drainPendingQueue(activeTasks);
+    scheduler.drainPendingQueue();
     
     final Set<Protos.OfferID> acceptedOffers = Sets.newHashSetWithExpectedSize(offers.size());
 
@@ -84,25 +89,33 @@ public class SingularityMesosScheduler implements Scheduler {
       rackManager.checkOffer(offer);
     }
 
+    final SingularityPlacementSnapshot placementSnapshot = rackManager.createPlacementSnapshot(taskManager.getActiveTaskIds());
+
     int numTasksSeen = 0;
+    int numTasksLaunched = 0;
 
     try {
-      final List<SingularityTaskRequest> tasks = scheduler.getDueTasks();
+      final SingularityDueTaskIndex dueTaskIndex = new SingularityDueTaskIndex(scheduler.getDueTasks(), DEFAULT_RESOURCES);
 
-      LOG.trace(String.format("Got tasks to match with offers %s", tasks));
+      LOG.trace(String.format("Got %s tasks in %s resource buckets to match with offers", dueTaskIndex.size(), dueTaskIndex.getNumBuckets()));
 
-      numTasksSeen = tasks.size();
+      numTasksSeen = dueTaskIndex.size();
 
       for (Protos.Offer offer : offers) {
+        if (dueTaskIndex.isEmpty()) {
+          driver.declineOffer(offer.getId());
+          continue;
+        }
+
         LOG.trace(String.format("Evaluating offer %s", offer));
 
-        Optional<SingularityTask> accepted = acceptOffer(driver, offer, tasks, activeTasks);
+        List<SingularityTask> accepted = acceptOffer(driver, offer, dueTaskIndex, placementSnapshot);
 
-        if (!accepted.isPresent()) {
+        if (accepted.isEmpty()) {
           driver.declineOffer(offer.getId());
         } else {
           acceptedOffers.add(offer.getId());
-          tasks.remove(accepted.get().getTaskRequest());
+          numTasksLaunched += accepted.size();
         }
       }
     } catch (Throwable t) {
@@ -119,45 +132,73 @@ public class SingularityMesosScheduler implements Scheduler {
       throw t;
     }
 
-    LOG.info(String.format("Finished handling offers (%s), accepted %s, declined %s, outstanding tasks %s", DurationFormatUtils.formatDurationHMS(System.currentTimeMillis() - start), acceptedOffers.size(),
-        offers.size() - acceptedOffers.size(), numTasksSeen - acceptedOffers.size()));
+    LOG.info(String.format("Finished handling offers (%s), accepted %s, declined %s, launched %s tasks, outstanding tasks %s", DurationFormatUtils.formatDurationHMS(System.currentTimeMillis() - start), acceptedOffers.size(),
+        offers.size() - acceptedOffers.size(), numTasksLaunched, numTasksSeen - numTasksLaunched));
   }
 
-  private Optional<SingularityTask> acceptOffer(SchedulerDriver driver, Protos.Offer offer, List<SingularityTaskRequest> tasks, List<SingularityTaskId> activeTasks) {
-    for (SingularityTaskRequest taskRequest : tasks) {
-      Resources taskResources = DEFAULT_RESOURCES;
-
-      if (taskRequest.getRequest().getResources() != null) {
-        taskResources = taskRequest.getRequest().getResources();
-      }
-
-      LOG.trace(String.format("Attempting to match resources %s with offer resources %s", taskResources, offer.getResourcesList()));
-          
-      final boolean matchesResources = MesosUtils.doesOfferMatchResources(taskResources, offer);
-      final RackCheckState rackCheckState = rackManager.checkRack(offer, taskRequest, activeTasks);
+  private List<SingularityTask> acceptOffer(SchedulerDriver driver, Protos.Offer offer, SingularityDueTaskIndex dueTaskIndex, SingularityPlacementSnapshot placementSnapshot) {
+    final List<SingularityTask> accepted = Lists.newArrayList();
+    final List<SingularityTaskRequest> acceptedTaskRequests = Lists.newArrayList();
+    
+    Protos.Offer remainingOffer = offer;
+    Resources available = MesosUtils.getResources(offer);
+    
+    // resources only shrink as tasks are packed onto this offer, so a single pass in priority order is enough. After each placement the pass resumes
+    // from only the buckets that still fit, and ends once none do.
+    Iterator<SingularityTaskRequest> candidates = dueTaskIndex.getCandidates(available);
+    
+    while (candidates.hasNext()) {
+      final SingularityTaskRequest taskRequest = candidates.next();
+      final Resources taskResources = dueTaskIndex.getResources(taskRequest);
+      
+      final RackCheckState rackCheckState = rackManager.checkRack(offer, taskRequest, placementSnapshot);
             
-      if (matchesResources && rackCheckState.isRackAppropriate()) {
-        final SingularityTask task = mesosTaskBuilder.buildTask(offer, taskRequest, taskResources);
-
-        LOG.info(String.format("Launching task %s slot on slave %s (%s)", task.getTaskId(), offer.getSlaveId(), offer.getHostname()));
-
-        taskManager.launchTask(task);
-
-        LOG.debug(String.format("Launching mesos task: %s", task.getMesosTask()));
+      if (!rackCheckState.isRackAppropriate()) {
+        LOG.trace(String.format("Turning down offer %s for task %s; rack state: %s", offer.getId(), taskRequest.getPendingTaskId(), rackCheckState));
+        continue;
+      }
+      
+      final SingularityTask task = mesosTaskBuilder.buildTask(offer, remainingOffer, taskRequest, taskResources);
 
-        Status initialStatus = driver.launchTasks(offer.getId(), ImmutableList.of(task.getMesosTask()));
+      LOG.info(String.format("Launching task %s slot on slave %s (%s)", task.getTaskId(), offer.getSlaveId(), offer.getHostname()));
 
-        LOG.trace(String.format("Task %s launched with status %s", task.getTaskId(), initialStatus.name()));
-        
-        historyManager.saveTaskHistory(task, initialStatus.name());
-
-        return Optional.of(task);
-      } else {
-        LOG.trace(String.format("Turning down offer %s for task %s; matched resources: %s, rack state: %s", offer.getId(), taskRequest.getPendingTaskId(), matchesResources, rackCheckState));
-      }
+      accepted.add(task);
+      acceptedTaskRequests.add(taskRequest);
+      placementSnapshot.addLaunchedTask(task.getTaskId());
+      
+      remainingOffer = offer.toBuilder()
+          .clearResources()
+          .addAllResources(MesosUtils.subtractResources(remainingOffer.getResourcesList(), task.getMesosTask().getResourcesList()))
+          .build();
+      available = MesosUtils.getResources(remainingOffer);
+      candidates = dueTaskIndex.getCandidatesAfter(available, taskRequest);
+    }
+    
+    if (accepted.isEmpty()) {
+      return accepted;
     }
+    
+    dueTaskIndex.removeAll(acceptedTaskRequests);
+    
+    taskManager.launchTasks(accepted);
+    
+    final List<Protos.TaskInfo> mesosTasks = Lists.newArrayListWithCapacity(accepted.size());
+    
+    for (SingularityTask task : accepted) {
+      LOG.debug(String.format("Launching mesos task: %s", task.getMesosTask()));
+      
+      mesosTasks.add(task.getMesosTask());
+    }
+    
+    Status initialStatus = driver.launchTasks(offer.getId(), mesosTasks);
 
-    return Optional.absent();
+    LOG.trace(String.format("%s task(s) launched on offer %s with status %s", accepted.size(), offer.getId(), initialStatus.name()));
+    
+    for (SingularityTask task : accepted) {
+      historyManager.saveTaskHistory(task, initialStatus.name());
+    }
+    
+    return accepted;
   }
 
   @Override
@@ -167,31 +208,90 @@ public class SingularityMesosScheduler implements Scheduler {
 
   @Override
   public void statusUpdate(SchedulerDriver driver, Protos.TaskStatus status) {
-    LOG.debug(String.format("Got a status update: %s", status));
-    
-    final String taskId = status.getTaskId().getValue();
+    statusUpdates(driver, Collections.singletonList(status));
+  }
+  
+  /**
+   * Handles a batch of status updates in arrival order. Every update is recorded and sent to webhooks, but each task's active state is read once and acted
+   * on once for its latest update, and requests with finished tasks are rescheduled in a single pass at the end. Each update gets its own timestamp,
+   * strictly increasing within the batch, so that history keeps them in the order they arrived.
+   */
+  public void statusUpdates(SchedulerDriver driver, List<Protos.TaskStatus> statuses) {
+    final long start = System.currentTimeMillis();
     
-    Optional<SingularityTask> maybeActiveTask = taskManager.getActiveTask(taskId);
+    final Map<String, List<Protos.TaskStatus>> statusesByTask = Maps.newLinkedHashMap();
     
-    if (maybeActiveTask.isPresent()) {
-      webhookManager.notify(new SingularityTaskUpdate(maybeActiveTask.get(), status.getState()));
-    } else {
-      LOG.info(String.format("Got an update for non-active task %s, skipping webhooks", taskId));
+    for (Protos.TaskStatus status : statuses) {
+      LOG.debug(String.format("Got a status update: %s", status));
+      
+      final String taskId = status.getTaskId().getValue();
+      
+      List<Protos.TaskStatus> taskStatuses = statusesByTask.get(taskId);
+      
+      if (taskStatuses == null) {
+        taskStatuses = Lists.newArrayListWithCapacity(1);
+        statusesByTask.put(taskId, taskStatuses);
+      }
+      
+      taskStatuses.add(status);
     }
-
-    final Date now = new Date();
     
-    historyManager.updateTaskHistory(taskId, status.getState().name(), now);
-    historyManager.saveTaskUpdate(taskId, status.getState().name(), status.hasMessage() ? Optional.of(status.getMessage()) : Optional.<String> absent(), now);
-
-    if (MesosUtils.isTaskDone(status.getState())) {
-      if (maybeActiveTask.isPresent()) {
-        taskManager.deleteActiveTask(taskId);
+    final Set<String> requestIdsToReschedule = Sets.newLinkedHashSet();
+    
+    long lastUpdateMillis = 0;
+    
+    for (Map.Entry<String, List<Protos.TaskStatus>> entry : statusesByTask.entrySet()) {
+      final String taskId = entry.getKey();
+      final List<Protos.TaskStatus> taskStatuses = entry.getValue();
+      final Protos.TaskStatus latest = taskStatuses.get(taskStatuses.size() - 1);
+      
+      Optional<SingularityTask> maybeActiveTask = taskManager.getActiveTask(taskId);
+      
+      boolean wasRunning = false;
+      Date updatedAt = null;
+      
+      for (Protos.TaskStatus status : taskStatuses) {
+        lastUpdateMillis = Math.max(System.currentTimeMillis(), lastUpdateMillis + 1);
+        updatedAt = new Date(lastUpdateMillis);
+        
+        if (status.getState() == TaskState.TASK_RUNNING) {
+          wasRunning = true;
+        }
+        
+        if (maybeActiveTask.isPresent()) {
+          final SingularityTaskUpdate taskUpdate = new SingularityTaskUpdate(maybeActiveTask.get(), status.getState());
+          
+          webhookManager.notify(taskUpdate);
+          eventLog.append(SingularityEvent.taskUpdate(taskUpdate));
+        }
+        
+        historyManager.saveTaskUpdate(taskId, status.getState().name(), status.hasMessage() ? Optional.of(status.getMessage()) : Optional.<String> absent(), updatedAt);
+      }
+      
+      if (!maybeActiveTask.isPresent()) {
+        LOG.info(String.format("Got %s update(s) for non-active task %s, skipping webhooks", taskStatuses.size(), taskId));
       }
       
-      scheduler.scheduleOnCompletion(taskId);
-    } else if (status.getState() == TaskState.TASK_RUNNING) {
-      logSupport.notifyRunning(maybeActiveTask.get());
+      historyManager.updateTaskHistory(taskId, latest.getState().name(), updatedAt);
+      
+      // a task that ran and finished within one batch still needs its directory looked up
+      if (wasRunning && maybeActiveTask.isPresent()) {
+        logSupport.notifyRunning(maybeActiveTask.get());
+      }
+      
+      if (MesosUtils.isTaskDone(latest.getState())) {
+        if (maybeActiveTask.isPresent()) {
+          taskManager.deleteActiveTask(taskId);
+        }
+        
+        requestIdsToReschedule.add(SingularityTaskId.fromString(taskId).getRequestId());
+      }
+    }
+    
+    scheduler.scheduleOnCompletion(requestIdsToReschedule);
+    
+    if (statuses.size() > 1) {
+      LOG.info(String.format("Handled %s status updates for %s tasks, rescheduling %s requests, in %sms", statuses.size(), statusesByTask.size(), requestIdsToReschedule.size(), System.currentTimeMillis() - start));
     }
   }
 
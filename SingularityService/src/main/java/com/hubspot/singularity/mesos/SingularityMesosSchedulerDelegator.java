@@ -1,8 +1,10 @@
 package com.hubspot.singularity.mesos;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.mesos.Protos;
 import org.apache.mesos.Protos.ExecutorID;
@@ -17,45 +19,74 @@ import org.apache.mesos.SchedulerDriver;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
 import com.google.inject.Inject;
 import com.hubspot.singularity.SingularityAbort;
-import com.hubspot.singularity.scheduler.SingularityCleanupPoller;
+import com.hubspot.singularity.config.SingularityConfiguration;
+import com.hubspot.singularity.data.ScheduledTaskCache;
+import com.hubspot.singularity.mesos.SingularitySchedulerEventLoop.SchedulerEventType;
+import com.hubspot.singularity.scheduler.SingularityCleanupProcessor;
+import com.hubspot.singularity.scheduler.SingularityDecomissionProcessor;
 
 public class SingularityMesosSchedulerDelegator implements Scheduler {
 
   private final static Logger LOG = LoggerFactory.getLogger(SingularityMesosSchedulerDelegator.class);
 
+  private final static int MAX_RESCINDED_OFFER_IDS = 1000;
+  
   private final SingularityMesosScheduler scheduler;
   private final SingularityStartup startup;
   private final SingularityAbort abort;
+  private final SingularitySchedulerEventLoop eventLoop;
   
-  private final Lock stateLock;
-  private final Lock lock;
-
   private enum SchedulerState {
     STARTUP, RUNNING, STOPPED;
   }
 
   private volatile SchedulerState state;
-  private final List<Protos.TaskStatus> queuedUpdates;
-  private final SingularityCleanupPoller cleanupPoller;
+  private volatile boolean started;
+  private final SingularityStartupUpdateBuffer queuedUpdates;
+  private final List<Protos.TaskStatus> pendingUpdates;
+  private final int maxStatusUpdateBatchSize;
+  private final Histogram startupReplaySize;
+  private final Histogram startupReplayMillis;
+  private final Set<OfferID> rescindedOfferIds;
+  private final SingularityCleanupProcessor cleanupProcessor;
+  private final SingularityDecomissionProcessor decomissionProcessor;
+  private final ScheduledTaskCache scheduledTaskCache;
   
-  private long lastOfferTimestamp;
-  private MasterInfo master;
+  private volatile Runnable tasksDueListener;
+  private volatile long lastOfferTimestamp;
+  private volatile MasterInfo master;
   
+  @SuppressWarnings("serial")
   @Inject
-  public SingularityMesosSchedulerDelegator(SingularityMesosScheduler scheduler, SingularityStartup startup, SingularityAbort abort, SingularityCleanupPoller cleanupPoller) {
+  public SingularityMesosSchedulerDelegator(SingularityMesosScheduler scheduler, SingularityStartup startup, SingularityAbort abort, SingularityCleanupProcessor cleanupProcessor, SingularityDecomissionProcessor decomissionProcessor,
+      SingularitySchedulerEventLoop eventLoop, ScheduledTaskCache scheduledTaskCache, SingularityConfiguration configuration, MetricRegistry metrics) {
     this.scheduler = scheduler;
     this.startup = startup;
     this.abort = abort;
-    this.cleanupPoller = cleanupPoller;
+    this.cleanupProcessor = cleanupProcessor;
+    this.decomissionProcessor = decomissionProcessor;
+    this.eventLoop = eventLoop;
+    this.scheduledTaskCache = scheduledTaskCache;
     
-    this.queuedUpdates = Lists.newArrayList();
-
-    this.lock = new ReentrantLock();
-    this.stateLock = new ReentrantLock();
+    this.queuedUpdates = new SingularityStartupUpdateBuffer(configuration.getMaxQueuedStartupUpdates());
+    this.pendingUpdates = Lists.newArrayList();
+    this.maxStatusUpdateBatchSize = Math.max(1, configuration.getMaxStatusUpdateBatchSize());
+    this.startupReplaySize = metrics.histogram(MetricRegistry.name(SingularityMesosSchedulerDelegator.class, "startupReplaySize"));
+    this.startupReplayMillis = metrics.histogram(MetricRegistry.name(SingularityMesosSchedulerDelegator.class, "startupReplayMillis"));
+    this.rescindedOfferIds = Collections.newSetFromMap(new LinkedHashMap<OfferID, Boolean>() {
+      
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<OfferID, Boolean> eldest) {
+        return size() > MAX_RESCINDED_OFFER_IDS;
+      }
+      
+    });
 
     this.state = SchedulerState.STARTUP;
   }
@@ -68,22 +99,27 @@ public class SingularityMesosSchedulerDelegator implements Scheduler {
     return master;
   }
   
-  // TODO should the lock wait on a timeout and then notify that it's taking a while?
-  
-  public void lock() {
-    lock.lock();
-  }
-
-  public void release() {
-    lock.unlock();
-  }
-  
+  /**
+   * Status updates have already been acknowledged to mesos when they were received, so the ones still waiting are kept and handled by the event
+   * loop as it drains - everything else is discarded.
+   */
   public void notifyStopping() {
     LOG.info("Scheduler is moving to stopped, current state: " + state);
     
-    cleanupPoller.stop();
+    cleanupProcessor.stop();
+    decomissionProcessor.stop();
+    
+    if (tasksDueListener != null) {
+      scheduledTaskCache.removeReadyListener(tasksDueListener);
+    }
+    
     state = SchedulerState.STOPPED;
+    eventLoop.clearExcept(SchedulerEventType.STATUS_UPDATE);
   
+    if (queuedUpdates.size() > 0) {
+      LOG.warn(String.format("Stopping before startup finished, %s queued update(s) won't be handled", queuedUpdates.size()));
+    }
+    
     LOG.info("Scheduler now in state: " + state);
   }
   
@@ -92,58 +128,165 @@ public class SingularityMesosSchedulerDelegator implements Scheduler {
 
     abort.abort();
   }
+  
+  /**
+   * Handlers run on the scheduler event loop thread, so they are serialized with each other and may touch delegator state without locking.
+   */
+  private abstract class SchedulerEventHandler implements Runnable {
+    
+    @Override
+    public void run() {
+      if (state == SchedulerState.STOPPED && !runsWhenStopped()) {
+        return;
+      }
+      
+      try {
+        handle();
+      } catch (Throwable t) {
+        handleUncaughtSchedulerException(t);
+      }
+    }
+    
+    protected abstract void handle();
+    
+    protected boolean runsWhenStopped() {
+      return false;
+    }
+    
+  }
 
-  private void startup(SchedulerDriver driver, MasterInfo masterInfo) {
+  private void startup(final SchedulerDriver driver, MasterInfo masterInfo) {
     Preconditions.checkState(state == SchedulerState.STARTUP, "Asked to startup - but in invalid state: %s", state.name());
     
     master = masterInfo;
     
     startup.startup(masterInfo);
 
-    cleanupPoller.start(this);
-    
-    stateLock.lock(); // ensure we aren't adding queued updates. calls to status updates are now blocked.
+    state = SchedulerState.RUNNING;
+    started = true;
 
-    try {
-      state = SchedulerState.RUNNING; // calls to resource offers will now block, since we are already scheduler locked.
+    cleanupProcessor.start(this);
+    decomissionProcessor.start(this);
+    
+    tasksDueListener = new Runnable() {
+      
+      @Override
+      public void run() {
+        postTasksDue(driver);
+      }
+      
+    };
+    scheduledTaskCache.addReadyListener(tasksDueListener);
 
-      for (Protos.TaskStatus status : queuedUpdates) {
-        scheduler.statusUpdate(driver, status);
+    replayQueuedUpdates(driver);
+  }
+  
+  /**
+   * Replayed in batches of maxStatusUpdateBatchSize, like updates received while running, so a long startup doesn't turn into one huge batch.
+   */
+  private void replayQueuedUpdates(SchedulerDriver driver) {
+    final long start = System.currentTimeMillis();
+    final int numReceived = queuedUpdates.getNumReceived();
+    final int numDropped = queuedUpdates.getNumDropped();
+    final List<Protos.TaskStatus> updates = queuedUpdates.drain();
+    
+    if (updates.isEmpty()) {
+      return;
+    }
+    
+    for (List<Protos.TaskStatus> batch : Lists.partition(updates, maxStatusUpdateBatchSize)) {
+      scheduler.statusUpdates(driver, batch);
+    }
+    
+    final long replayMillis = System.currentTimeMillis() - start;
+    
+    startupReplaySize.update(updates.size());
+    startupReplayMillis.update(replayMillis);
+    
+    LOG.info(String.format("Replayed %s queued update(s) (%s received during startup, %s dropped) in %sms", updates.size(), numReceived, numDropped, replayMillis));
+  }
+  
+  public void postDecomission(final Runnable decomission) {
+    if (!isRunning()) {
+      return;
+    }
+    
+    if (!eventLoop.postIfAbsent(SchedulerEventType.DECOMISSION, new SchedulerEventHandler() {
+      
+      @Override
+      protected void handle() {
+        decomission.run();
       }
       
-    } finally {
-      stateLock.unlock();
+    })) {
+      LOG.debug("A decomission check is already pending, skipping");
     }
   }
 
-  @Override
-  public void registered(SchedulerDriver driver, FrameworkID frameworkId, MasterInfo masterInfo) {
-    lock();
-
-    try {
-      startup(driver, masterInfo);
-
-      scheduler.registered(driver, frameworkId, masterInfo);
-    } catch (Throwable t) {
-      handleUncaughtSchedulerException(t);
-    } finally {
-      release();
+  public void postRequestCleanup(final Runnable requestCleanup) {
+    if (!isRunning()) {
+      return;
+    }
+    
+    if (!eventLoop.postIfAbsent(SchedulerEventType.REQUEST_CLEANUP, new SchedulerEventHandler() {
+      
+      @Override
+      protected void handle() {
+        requestCleanup.run();
+      }
+      
+    })) {
+      LOG.debug("A request cleanup is already pending, skipping");
+    }
+  }
+  
+  /**
+   * Offers declined while nothing was due are filtered by mesos for a while, so scheduled tasks coming due ask for them to be offered again
+   * rather than waiting out the filter.
+   */
+  private void postTasksDue(final SchedulerDriver driver) {
+    if (!isRunning()) {
+      return;
     }
+    
+    eventLoop.postIfAbsent(SchedulerEventType.TASKS_DUE, new SchedulerEventHandler() {
+      
+      @Override
+      protected void handle() {
+        LOG.debug("Scheduled tasks came due, reviving offers");
+        
+        driver.reviveOffers();
+      }
+      
+    });
   }
 
   @Override
-  public void reregistered(SchedulerDriver driver, MasterInfo masterInfo) {
-    lock();
-
-    try {
-      startup(driver, masterInfo);
+  public void registered(final SchedulerDriver driver, final FrameworkID frameworkId, final MasterInfo masterInfo) {
+    eventLoop.post(SchedulerEventType.REGISTRATION, new SchedulerEventHandler() {
+      
+      @Override
+      protected void handle() {
+        startup(driver, masterInfo);
+        
+        scheduler.registered(driver, frameworkId, masterInfo);
+      }
+      
+    });
+  }
 
-      scheduler.reregistered(driver, masterInfo);
-    } catch (Throwable t) {
-      handleUncaughtSchedulerException(t);
-    } finally {
-      release();
-    }
+  @Override
+  public void reregistered(final SchedulerDriver driver, final MasterInfo masterInfo) {
+    eventLoop.post(SchedulerEventType.REGISTRATION, new SchedulerEventHandler() {
+      
+      @Override
+      protected void handle() {
+        startup(driver, masterInfo);
+        
+        scheduler.reregistered(driver, masterInfo);
+      }
+      
+    });
   }
 
   private boolean isRunning() {
@@ -151,7 +294,7 @@ public class SingularityMesosSchedulerDelegator implements Scheduler {
   }
   
   @Override
-  public void resourceOffers(SchedulerDriver driver, List<Offer> offers) {
+  public void resourceOffers(final SchedulerDriver driver, final List<Offer> offers) {
     lastOfferTimestamp = System.currentTimeMillis();
     
     if (!isRunning()) {
@@ -164,144 +307,184 @@ public class SingularityMesosSchedulerDelegator implements Scheduler {
       return;
     }
 
-    lock();
-
-    try {
-      scheduler.resourceOffers(driver, offers);
-    } catch (Throwable t) {
-      handleUncaughtSchedulerException(t);
-    } finally {
-      release();
-    }
+    eventLoop.post(SchedulerEventType.RESOURCE_OFFERS, new SchedulerEventHandler() {
+      
+      @Override
+      protected void handle() {
+        final List<Offer> liveOffers = Lists.newArrayListWithCapacity(offers.size());
+        
+        for (Offer offer : offers) {
+          if (rescindedOfferIds.remove(offer.getId())) {
+            LOG.debug(String.format("Skipping rescinded offer %s", offer.getId().getValue()));
+            continue;
+          }
+          
+          liveOffers.add(offer);
+        }
+        
+        if (!liveOffers.isEmpty()) {
+          scheduler.resourceOffers(driver, liveOffers);
+        }
+      }
+      
+    });
   }
 
   @Override
-  public void offerRescinded(SchedulerDriver driver, OfferID offerId) {
+  public void offerRescinded(final SchedulerDriver driver, final OfferID offerId) {
     if (!isRunning()) {
       return;
     }
     
-    lock();
-
-    try {
-      scheduler.offerRescinded(driver, offerId);
-    } catch (Throwable t) {
-      handleUncaughtSchedulerException(t);
-    } finally {
-      release();
-    }
+    eventLoop.post(SchedulerEventType.OFFER_RESCINDED, new SchedulerEventHandler() {
+      
+      @Override
+      protected void handle() {
+        rescindedOfferIds.add(offerId);
+        
+        scheduler.offerRescinded(driver, offerId);
+      }
+      
+    });
   }
 
+  /**
+   * Updates are buffered and handled in batches by a single STATUS_UPDATE event, so that every update which arrives while the event waits its turn
+   * is handled with it.
+   */
   @Override
-  public void statusUpdate(SchedulerDriver driver, TaskStatus status) {
-    stateLock.lock();
-
-    try {
-      if (!isRunning()) {
-        LOG.info(String.format("Scheduler is in state %s, queueing an update %s - %s queued updates so far", state.name(), status, queuedUpdates.size()));
-
-        queuedUpdates.add(status);
-
-        return;
-      }
-    } finally {
-      stateLock.unlock();
+  public void statusUpdate(final SchedulerDriver driver, final TaskStatus status) {
+    synchronized (pendingUpdates) {
+      pendingUpdates.add(status);
     }
-
-    lock();
     
-    try {
-      scheduler.statusUpdate(driver, status);
-    } catch (Throwable t) {
-      handleUncaughtSchedulerException(t);
-    } finally {
-      release();
-    }
+    postStatusUpdates(driver);
+  }
+  
+  private void postStatusUpdates(final SchedulerDriver driver) {
+    eventLoop.postIfAbsent(SchedulerEventType.STATUS_UPDATE, new SchedulerEventHandler() {
+      
+      @Override
+      protected boolean runsWhenStopped() {
+        return true;
+      }
+      
+      @Override
+      protected void handle() {
+        final List<Protos.TaskStatus> batch;
+        final boolean remaining;
+        
+        synchronized (pendingUpdates) {
+          final List<Protos.TaskStatus> drained = pendingUpdates.subList(0, Math.min(pendingUpdates.size(), maxStatusUpdateBatchSize));
+          
+          batch = Lists.newArrayList(drained);
+          drained.clear();
+          
+          remaining = !pendingUpdates.isEmpty();
+        }
+        
+        if (remaining) {
+          postStatusUpdates(driver);
+        }
+        
+        if (batch.isEmpty()) {
+          return;
+        }
+        
+        if (!started) {
+          for (Protos.TaskStatus status : batch) {
+            queuedUpdates.add(status);
+          }
+          
+          LOG.info(String.format("Scheduler is in state %s, queued %s update(s) - holding the latest of %s tasks so far", state.name(), batch.size(), queuedUpdates.size()));
+
+          return;
+        }
+        
+        scheduler.statusUpdates(driver, batch);
+      }
+      
+    });
   }
 
   @Override
-  public void frameworkMessage(SchedulerDriver driver, ExecutorID executorId, SlaveID slaveId, byte[] data) {
+  public void frameworkMessage(final SchedulerDriver driver, final ExecutorID executorId, final SlaveID slaveId, final byte[] data) {
     if (!isRunning()) {
       return;
     }
     
-    lock();
-
-    try {
-      scheduler.frameworkMessage(driver, executorId, slaveId, data);
-    } catch (Throwable t) {
-      handleUncaughtSchedulerException(t);
-    } finally {
-      release();
-    }
+    eventLoop.post(SchedulerEventType.OTHER, new SchedulerEventHandler() {
+      
+      @Override
+      protected void handle() {
+        scheduler.frameworkMessage(driver, executorId, slaveId, data);
+      }
+      
+    });
   }
 
   @Override
-  public void disconnected(SchedulerDriver driver) {
+  public void disconnected(final SchedulerDriver driver) {
     if (!isRunning()) {
       return;
     }
     
-    lock();
-    
-    try {
-      scheduler.disconnected(driver);
-    } catch (Throwable t) {
-      handleUncaughtSchedulerException(t);
-    } finally {
-      release();
-    }
+    eventLoop.post(SchedulerEventType.OTHER, new SchedulerEventHandler() {
+      
+      @Override
+      protected void handle() {
+        scheduler.disconnected(driver);
+      }
+      
+    });
   }
 
   @Override
-  public void slaveLost(SchedulerDriver driver, SlaveID slaveId) {
+  public void slaveLost(final SchedulerDriver driver, final SlaveID slaveId) {
     if (!isRunning()) {
       return;
     }
     
-    lock();
-    
-    try {
-      scheduler.slaveLost(driver, slaveId);
-    } catch (Throwable t) {
-      handleUncaughtSchedulerException(t);
-    } finally {
-      release();
-    }
+    eventLoop.post(SchedulerEventType.SLAVE_LOST, new SchedulerEventHandler() {
+      
+      @Override
+      protected void handle() {
+        scheduler.slaveLost(driver, slaveId);
+      }
+      
+    });
   }
 
   @Override
-  public void executorLost(SchedulerDriver driver, ExecutorID executorId, SlaveID slaveId, int status) {
+  public void executorLost(final SchedulerDriver driver, final ExecutorID executorId, final SlaveID slaveId, final int status) {
     if (!isRunning()) {
       return;
     }
     
-    lock();
-    
-    try {
-      scheduler.executorLost(driver, executorId, slaveId, status);
-    } catch (Throwable t) {
-      handleUncaughtSchedulerException(t);
-    } finally {
-      release();
-    }
+    eventLoop.post(SchedulerEventType.OTHER, new SchedulerEventHandler() {
+      
+      @Override
+      protected void handle() {
+        scheduler.executorLost(driver, executorId, slaveId, status);
+      }
+      
+    });
   }
 
   @Override
-  public void error(SchedulerDriver driver, String message) {
+  public void error(final SchedulerDriver driver, final String message) {
     if (!isRunning()) {
       return;
     }
     
-    lock();
-    
-    try {
-      scheduler.error(driver, message);
-    } catch (Throwable t) {
-      handleUncaughtSchedulerException(t);
-    } finally {
-      release();
-    }
+    eventLoop.post(SchedulerEventType.OTHER, new SchedulerEventHandler() {
+      
+      @Override
+      protected void handle() {
+        scheduler.error(driver, message);
+      }
+      
+    });
   }
 
 }
@@ -20,6 +20,7 @@ import org.slf4j.LoggerFactory;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Objects;
+import com.google.common.collect.Maps;
 import com.google.inject.Inject;
 import com.google.protobuf.ByteString;
 import com.hubspot.mesos.MesosUtils;
@@ -41,7 +42,10 @@ public class SingularityMesosTaskBuilder {
     this.rackManager = rackManager;
   }
   
-  public SingularityTask buildTask(Protos.Offer offer, SingularityTaskRequest taskRequest, Resources resources) {
+  /**
+   * Ports are taken from remainingOffer, which is offer less whatever earlier tasks packed onto it took. The task records the original offer.
+   */
+  public SingularityTask buildTask(Protos.Offer offer, Protos.Offer remainingOffer, SingularityTaskRequest taskRequest, Resources resources) {
     final String rackId = rackManager.getRackId(offer);
     final String host = rackManager.getSlaveHost(offer);
     
@@ -54,7 +58,7 @@ public class SingularityMesosTaskBuilder {
     Resource portsResource = null;
     
     if (resources.getNumPorts() > 0) {
-      portsResource = MesosUtils.getPortsResource(resources.getNumPorts(), offer);
+      portsResource = MesosUtils.getPortsResource(resources.getNumPorts(), remainingOffer);
       ports = MesosUtils.getPorts(portsResource, resources.getNumPorts());
     }
     
@@ -97,8 +101,10 @@ public class SingularityMesosTaskBuilder {
         try {
           if (ports != null) {
             try {
-              Map<String, Object> executorDataMap = (Map<String, Object>) executorData;
+              // copy, since the request may be shared through the request cache
+              Map<String, Object> executorDataMap = Maps.newHashMap((Map<String, Object>) executorData);
               executorDataMap.put("ports", ports);
+              executorData = executorDataMap;
             } catch (ClassCastException cce) {
               LOG.warn(String.format("Unable to add ports executor data %s because it wasn't a map", executorData), cce);
             }
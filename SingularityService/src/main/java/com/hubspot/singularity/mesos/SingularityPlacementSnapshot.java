@@ -0,0 +1,106 @@
+package com.hubspot.singularity.mesos;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multiset;
+import com.google.common.collect.Sets;
+import com.hubspot.singularity.SingularityTaskId;
+
+/**
+ * Machine and task placement state captured once at the start of an offer cycle, so rack checks for every (offer, task) pair are answered from memory.
+ * The machine states are fixed for the cycle; tasks launched during the cycle are added as they are placed.
+ */
+public class SingularityPlacementSnapshot {
+
+  private final Set<String> decomissioningSlaveIds;
+  private final Set<String> decomissioningRackIds;
+  private final int numActiveRacks;
+  private final Set<SingularityTaskId> taskIdsOnDecomissioningSlaves;
+  private final ListMultimap<String, SingularityTaskId> activeTaskIdsByRequest;
+  private final Map<String, RequestPlacement> requestPlacements;
+
+  public SingularityPlacementSnapshot(Set<String> decomissioningSlaveIds, Set<String> decomissioningRackIds, int numActiveRacks, List<SingularityTaskId> activeTaskIds, Set<SingularityTaskId> taskIdsOnDecomissioningSlaves) {
+    this.decomissioningSlaveIds = ImmutableSet.copyOf(decomissioningSlaveIds);
+    this.decomissioningRackIds = ImmutableSet.copyOf(decomissioningRackIds);
+    this.numActiveRacks = numActiveRacks;
+    this.taskIdsOnDecomissioningSlaves = ImmutableSet.copyOf(taskIdsOnDecomissioningSlaves);
+    this.activeTaskIdsByRequest = ArrayListMultimap.create();
+    this.requestPlacements = Maps.newHashMap();
+
+    for (SingularityTaskId taskId : activeTaskIds) {
+      activeTaskIdsByRequest.put(taskId.getRequestId(), taskId);
+    }
+  }
+
+  private static class RequestPlacement {
+
+    private final Set<String> hosts = Sets.newHashSet();
+    private final Multiset<String> rackUsage = HashMultiset.create();
+
+    private void add(SingularityTaskId taskId) {
+      hosts.add(taskId.getHost());
+      rackUsage.add(taskId.getRackId());
+    }
+
+  }
+
+  public boolean isSlaveDecomissioning(String slaveId) {
+    return decomissioningSlaveIds.contains(slaveId);
+  }
+
+  public boolean isRackDecomissioning(String rackId) {
+    return decomissioningRackIds.contains(rackId);
+  }
+
+  public int getNumActiveRacks() {
+    return numActiveRacks;
+  }
+
+  public boolean isOnActiveMachine(SingularityTaskId taskId) {
+    return !decomissioningRackIds.contains(taskId.getRackId()) && !taskIdsOnDecomissioningSlaves.contains(taskId);
+  }
+
+  private RequestPlacement getRequestPlacement(String requestId) {
+    RequestPlacement placement = requestPlacements.get(requestId);
+
+    if (placement == null) {
+      placement = new RequestPlacement();
+
+      for (SingularityTaskId taskId : activeTaskIdsByRequest.get(requestId)) {
+        if (isOnActiveMachine(taskId)) {
+          placement.add(taskId);
+        }
+      }
+
+      requestPlacements.put(requestId, placement);
+    }
+
+    return placement;
+  }
+
+  public boolean isRequestOnHost(String requestId, String host) {
+    return getRequestPlacement(requestId).hosts.contains(host);
+  }
+
+  public int getNumOnRack(String requestId, String rackId) {
+    return getRequestPlacement(requestId).rackUsage.count(rackId);
+  }
+
+  public void addLaunchedTask(SingularityTaskId taskId) {
+    activeTaskIdsByRequest.put(taskId.getRequestId(), taskId);
+
+    RequestPlacement placement = requestPlacements.get(taskId.getRequestId());
+
+    if (placement != null) {
+      placement.add(taskId);
+    }
+  }
+
+}
@@ -1,7 +1,7 @@
 package com.hubspot.singularity.mesos;
 
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 
 import org.apache.mesos.Protos;
 import org.apache.mesos.Protos.Attribute;
@@ -10,9 +10,8 @@ import org.apache.mesos.Protos.SlaveID;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.base.Objects;
 import com.google.common.base.Optional;
-import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.inject.Inject;
 import com.hubspot.mesos.json.MesosMasterSlaveObject;
 import com.hubspot.mesos.json.MesosMasterStateObject;
@@ -75,16 +74,33 @@ public class SingularityRackManager extends SingularitySchedulerBase {
     return getHost(offer.getHostname());
   }
   
-  public RackCheckState checkRack(Protos.Offer offer, SingularityTaskRequest taskRequest, List<SingularityTaskId> activeTasks) {
+  public SingularityPlacementSnapshot createPlacementSnapshot(List<SingularityTaskId> activeTaskIds) {
+    final long start = System.currentTimeMillis();
+    
+    final List<SingularitySlave> decomissioningSlaves = getDecomissioningSlaves();
+    final Set<String> decomissioningSlaveIds = Sets.newHashSetWithExpectedSize(decomissioningSlaves.size());
+    
+    for (SingularitySlave slave : decomissioningSlaves) {
+      decomissioningSlaveIds.add(slave.getId());
+    }
+    
+    final SingularityPlacementSnapshot snapshot = new SingularityPlacementSnapshot(decomissioningSlaveIds, Sets.newHashSet(getDecomissioningRacks()), getNumRacks(), activeTaskIds, getTaskIdsOnDecomissioningSlaves(decomissioningSlaves));
+    
+    LOG.trace(String.format("Built placement snapshot of %s active tasks, %s decomissioning slaves in %sms", activeTaskIds.size(), decomissioningSlaves.size(), System.currentTimeMillis() - start));
+    
+    return snapshot;
+  }
+  
+  public RackCheckState checkRack(Protos.Offer offer, SingularityTaskRequest taskRequest, SingularityPlacementSnapshot snapshot) {
     final String host = getSlaveHost(offer);
     final String rackId = getRackId(offer);
     final String slaveId = offer.getSlaveId().getValue();
     
-    if (isSlaveDecomissioning(slaveId)) {
+    if (snapshot.isSlaveDecomissioning(slaveId)) {
       return RackCheckState.SLAVE_DECOMISSIONING;
     }
     
-    if (isRackDecomissioning(rackId)) {
+    if (snapshot.isRackDecomissioning(rackId)) {
       return RackCheckState.RACK_DECOMISSIONING;
     }
     
@@ -92,24 +108,18 @@ public class SingularityRackManager extends SingularitySchedulerBase {
       return RackCheckState.NOT_RACK_SENSITIVE;
     }
     
-    int numDesiredInstances = taskRequest.getRequest().getInstances();
-
-    Map<String, Integer> rackUsage = Maps.newHashMap();
-
-    for (SingularityTaskId taskId : getMatchingActiveTaskIds(taskRequest.getRequest().getId(), activeTasks, getDecomissioningRacks(), getDecomissioningSlaves())) {
-      if (taskId.getHost().equals(host)) {
-        LOG.trace(String.format("Task %s is already on slave %s - %s", taskRequest.getPendingTaskId(), host, taskId));
-        
-        return RackCheckState.ALREADY_ON_SLAVE;
-      }
+    final String requestId = taskRequest.getRequest().getId();
+    
+    if (snapshot.isRequestOnHost(requestId, host)) {
+      LOG.trace(String.format("Task %s is already on slave %s", taskRequest.getPendingTaskId(), host));
       
-      Integer currentUsage = Objects.firstNonNull(rackUsage.get(taskId.getRackId()), 0);
-
-      rackUsage.put(taskId.getRackId(), currentUsage + 1);
+      return RackCheckState.ALREADY_ON_SLAVE;
     }
+    
+    int numDesiredInstances = taskRequest.getRequest().getInstances();
 
-    double numPerRack = (double) numDesiredInstances / (double) getNumRacks();
-    double numOnRack = Objects.firstNonNull(rackUsage.get(rackId), 0);
+    double numPerRack = (double) numDesiredInstances / (double) snapshot.getNumActiveRacks();
+    double numOnRack = snapshot.getNumOnRack(requestId, rackId);
 
     boolean isRackOk = numOnRack < numPerRack;
   
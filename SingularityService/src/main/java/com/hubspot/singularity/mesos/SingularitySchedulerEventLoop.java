@@ -0,0 +1,310 @@
+package com.hubspot.singularity.mesos;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import com.hubspot.singularity.SingularitySchedulerEventStats;
+import com.hubspot.singularity.config.SingularityConfiguration;
+
+/**
+ * Runs all scheduler work on a single thread. Events are taken from per type mailboxes in priority order, except that an event which has waited longer
+ * than schedulerEventMaxWaitMillis is taken ahead of higher priority ones so that no type of event is starved.
+ */
+public class SingularitySchedulerEventLoop {
+
+  private final static Logger LOG = LoggerFactory.getLogger(SingularitySchedulerEventLoop.class);
+
+  // declaration order is priority order
+  public enum SchedulerEventType {
+    REGISTRATION, STATUS_UPDATE, OFFER_RESCINDED, SLAVE_LOST, DECOMISSION, REQUEST_CLEANUP, TASKS_DUE, RESOURCE_OFFERS, OTHER;
+  }
+
+  private final SingularityConfiguration configuration;
+
+  private final Lock lock;
+  private final Condition notEmpty;
+  private final Map<SchedulerEventType, Deque<SchedulerEvent>> mailboxes;
+  private final Map<SchedulerEventType, Histogram> waitHistograms;
+  private final Map<SchedulerEventType, Histogram> processingHistograms;
+  private final ExecutorService executorService;
+
+  private int size;
+  private boolean stopping;
+
+  @Inject
+  public SingularitySchedulerEventLoop(SingularityConfiguration configuration, MetricRegistry metrics) {
+    this.configuration = configuration;
+
+    this.lock = new ReentrantLock();
+    this.notEmpty = lock.newCondition();
+    this.mailboxes = new EnumMap<>(SchedulerEventType.class);
+    this.waitHistograms = new EnumMap<>(SchedulerEventType.class);
+    this.processingHistograms = new EnumMap<>(SchedulerEventType.class);
+
+    for (final SchedulerEventType type : SchedulerEventType.values()) {
+      mailboxes.put(type, new ArrayDeque<SchedulerEvent>());
+      waitHistograms.put(type, metrics.histogram(MetricRegistry.name(SingularitySchedulerEventLoop.class, type.name(), "waitMillis")));
+      processingHistograms.put(type, metrics.histogram(MetricRegistry.name(SingularitySchedulerEventLoop.class, type.name(), "processingMillis")));
+
+      metrics.register(MetricRegistry.name(SingularitySchedulerEventLoop.class, type.name(), "queueDepth"), new Gauge<Integer>() {
+
+        @Override
+        public Integer getValue() {
+          return getQueueDepth(type);
+        }
+
+      });
+    }
+
+    metrics.register(MetricRegistry.name(SingularitySchedulerEventLoop.class, "queueDepth"), new Gauge<Integer>() {
+
+      @Override
+      public Integer getValue() {
+        return getQueueDepth();
+      }
+
+    });
+
+    this.executorService = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setDaemon(true).setNameFormat("SingularitySchedulerEventLoop-%d").build());
+
+    executorService.submit(new Runnable() {
+
+      @Override
+      public void run() {
+        runLoop();
+      }
+
+    });
+  }
+
+  private static class SchedulerEvent {
+
+    private final SchedulerEventType type;
+    private final Runnable handler;
+    private final long postedAt;
+
+    private SchedulerEvent(SchedulerEventType type, Runnable handler) {
+      this.type = type;
+      this.handler = handler;
+      this.postedAt = System.currentTimeMillis();
+    }
+
+  }
+
+  public void post(SchedulerEventType type, Runnable handler) {
+    lock.lock();
+
+    try {
+      mailboxes.get(type).add(new SchedulerEvent(type, handler));
+      size++;
+
+      notEmpty.signal();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Posts the event unless one of the same type is already waiting.
+   */
+  public boolean postIfAbsent(SchedulerEventType type, Runnable handler) {
+    lock.lock();
+
+    try {
+      if (!mailboxes.get(type).isEmpty()) {
+        return false;
+      }
+
+      post(type, handler);
+
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Discards every waiting event except those of the kept type.
+   */
+  public void clearExcept(SchedulerEventType keep) {
+    lock.lock();
+
+    try {
+      for (Map.Entry<SchedulerEventType, Deque<SchedulerEvent>> entry : mailboxes.entrySet()) {
+        if (entry.getKey() == keep || entry.getValue().isEmpty()) {
+          continue;
+        }
+
+        LOG.info(String.format("Discarding %s pending %s event(s)", entry.getValue().size(), entry.getKey()));
+
+        size -= entry.getValue().size();
+        entry.getValue().clear();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Handles whatever is still waiting, then stops the loop thread. Gives up after schedulerEventDrainTimeoutSeconds.
+   */
+  public void stop() {
+    lock.lock();
+
+    try {
+      stopping = true;
+
+      notEmpty.signalAll();
+    } finally {
+      lock.unlock();
+    }
+
+    executorService.shutdown();
+
+    try {
+      if (!executorService.awaitTermination(configuration.getSchedulerEventDrainTimeoutSeconds(), TimeUnit.SECONDS)) {
+        LOG.warn(String.format("Scheduler event loop didn't drain after %s seconds, %s event(s) remain", configuration.getSchedulerEventDrainTimeoutSeconds(), getQueueDepth()));
+        executorService.shutdownNow();
+      }
+    } catch (InterruptedException ie) {
+      LOG.warn("Interrupted while waiting for scheduler event loop to drain");
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  public int getQueueDepth() {
+    lock.lock();
+
+    try {
+      return size;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public int getQueueDepth(SchedulerEventType type) {
+    lock.lock();
+
+    try {
+      return mailboxes.get(type).size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public List<SingularitySchedulerEventStats> getStats() {
+    final List<SingularitySchedulerEventStats> stats = Lists.newArrayListWithCapacity(SchedulerEventType.values().length);
+
+    for (SchedulerEventType type : SchedulerEventType.values()) {
+      final Histogram waitHistogram = waitHistograms.get(type);
+      final Snapshot wait = waitHistogram.getSnapshot();
+      final Snapshot processing = processingHistograms.get(type).getSnapshot();
+
+      stats.add(new SingularitySchedulerEventStats(type.name(), getQueueDepth(type), waitHistogram.getCount(), wait.getMean(), wait.get99thPercentile(), wait.getMax(), processing.getMean(), processing.get99thPercentile(), processing.getMax()));
+    }
+
+    return stats;
+  }
+
+  /**
+   * Returns null once the loop is stopping and nothing is left.
+   */
+  private SchedulerEvent take() throws InterruptedException {
+    lock.lock();
+
+    try {
+      while (size == 0) {
+        if (stopping) {
+          return null;
+        }
+
+        notEmpty.await();
+      }
+
+      final long now = System.currentTimeMillis();
+
+      Deque<SchedulerEvent> selected = null;
+      long oldestPostedAt = Long.MAX_VALUE;
+
+      for (Deque<SchedulerEvent> mailbox : mailboxes.values()) {
+        final SchedulerEvent head = mailbox.peek();
+
+        if (head != null && now - head.postedAt >= configuration.getSchedulerEventMaxWaitMillis() && head.postedAt < oldestPostedAt) {
+          selected = mailbox;
+          oldestPostedAt = head.postedAt;
+        }
+      }
+
+      if (selected == null) {
+        for (Deque<SchedulerEvent> mailbox : mailboxes.values()) {
+          if (!mailbox.isEmpty()) {
+            selected = mailbox;
+            break;
+          }
+        }
+      }
+
+      size--;
+
+      return selected.poll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void runLoop() {
+    while (!Thread.currentThread().isInterrupted()) {
+      final SchedulerEvent event;
+
+      try {
+        event = take();
+      } catch (InterruptedException ie) {
+        LOG.info("Scheduler event loop interrupted");
+        return;
+      }
+
+      if (event == null) {
+        LOG.info("Scheduler event loop drained");
+        return;
+      }
+
+      final long start = System.currentTimeMillis();
+      
+      waitHistograms.get(event.type).update(start - event.postedAt);
+
+      try {
+        event.handler.run();
+      } catch (Throwable t) {
+        LOG.error(String.format("Uncaught exception while handling %s event", event.type), t);
+      } finally {
+        final long processingMillis = System.currentTimeMillis() - start;
+        
+        processingHistograms.get(event.type).update(processingMillis);
+        
+        if (processingMillis > configuration.getSchedulerEventMaxWaitMillis()) {
+          LOG.warn(String.format("Handling %s event took %sms (waited %sms)", event.type, processingMillis, start - event.postedAt));
+        }
+      }
+    }
+  }
+
+}
@@ -15,9 +15,11 @@ import com.hubspot.mesos.json.MesosFrameworkObject;
 import com.hubspot.mesos.json.MesosMasterStateObject;
 import com.hubspot.mesos.json.MesosTaskObject;
 import com.hubspot.singularity.SingularityPendingRequestId;
+import com.hubspot.singularity.SingularityRequest;
 import com.hubspot.singularity.SingularityTaskId;
 import com.hubspot.singularity.data.RequestManager;
 import com.hubspot.singularity.data.TaskManager;
+import com.hubspot.singularity.scheduler.SingularityCronScheduleCache;
 
 public class SingularityStartup {
 
@@ -27,13 +29,15 @@ public class SingularityStartup {
   private final TaskManager taskManager;
   private final SingularityRackManager rackManager;
   private final RequestManager requestManager;
+  private final SingularityCronScheduleCache cronScheduleCache;
   
   @Inject
-  public SingularityStartup(MesosClient mesosClient, ObjectMapper objectMapper, SingularityRackManager rackManager, TaskManager taskManager, RequestManager requestManager) {
+  public SingularityStartup(MesosClient mesosClient, ObjectMapper objectMapper, SingularityRackManager rackManager, TaskManager taskManager, RequestManager requestManager, SingularityCronScheduleCache cronScheduleCache) {
     this.mesosClient = mesosClient;
     this.rackManager = rackManager;
     this.taskManager = taskManager;
     this.requestManager = requestManager;
+    this.cronScheduleCache = cronScheduleCache;
   }
   
   public void startup(MasterInfo masterInfo) {
@@ -85,10 +89,13 @@ public class SingularityStartup {
   }
   
   private void rescheduleTheWorld() {
-    final List<String> requests = requestManager.getRequestIds();
+    final List<SingularityRequest> requests = requestManager.getKnownRequests();
     
-    for (String requestId : requests) {
-      requestManager.addToPendingQueue(new SingularityPendingRequestId(requestId));
+    // compiles every schedule up front, so that draining the pending queue finds them cached
+    cronScheduleCache.getNextFireTimes(requests, System.currentTimeMillis());
+    
+    for (SingularityRequest request : requests) {
+      requestManager.addToPendingQueue(new SingularityPendingRequestId(request.getId()));
     }
     
     LOG.info(String.format("Put %s requests in pending queue", requests.size()));
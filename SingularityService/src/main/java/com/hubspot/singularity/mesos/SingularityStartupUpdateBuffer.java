@@ -0,0 +1,72 @@
+package com.hubspot.singularity.mesos;
+
+import java.util.List;
+import java.util.Map;
+
+import org.apache.mesos.Protos;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.hubspot.mesos.MesosUtils;
+
+/**
+ * Holds the status updates received before the scheduler is running, keeping only the latest state of each task. A terminal state is never replaced,
+ * and once maxSize tasks are held, non-terminal updates for new tasks are dropped - replaying them would not change anything that isn't already known.
+ */
+class SingularityStartupUpdateBuffer {
+
+  private final int maxSize;
+  private final Map<String, Protos.TaskStatus> latestByTask;
+
+  private int numReceived;
+  private int numDropped;
+
+  SingularityStartupUpdateBuffer(int maxSize) {
+    this.maxSize = maxSize;
+    this.latestByTask = Maps.newLinkedHashMap();
+  }
+
+  synchronized void add(Protos.TaskStatus status) {
+    numReceived++;
+
+    final String taskId = status.getTaskId().getValue();
+    final Protos.TaskStatus existing = latestByTask.get(taskId);
+
+    if (existing == null) {
+      if (latestByTask.size() >= maxSize && !MesosUtils.isTaskDone(status.getState())) {
+        numDropped++;
+        return;
+      }
+    } else if (MesosUtils.isTaskDone(existing.getState())) {
+      return;
+    }
+
+    latestByTask.put(taskId, status);
+  }
+
+  synchronized int size() {
+    return latestByTask.size();
+  }
+
+  synchronized int getNumReceived() {
+    return numReceived;
+  }
+
+  synchronized int getNumDropped() {
+    return numDropped;
+  }
+
+  /**
+   * Returns the buffered updates in the order their tasks were first seen and empties the buffer.
+   */
+  synchronized List<Protos.TaskStatus> drain() {
+    final List<Protos.TaskStatus> drained = ImmutableList.copyOf(latestByTask.values());
+
+    latestByTask.clear();
+    numReceived = 0;
+    numDropped = 0;
+
+    return drained;
+  }
+
+}
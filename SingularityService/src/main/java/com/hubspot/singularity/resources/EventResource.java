@@ -0,0 +1,186 @@
+package com.hubspot.singularity.resources;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+import com.google.inject.Inject;
+import com.hubspot.singularity.SingularityEvent;
+import com.hubspot.singularity.config.SingularityConfiguration;
+import com.hubspot.singularity.hooks.SingularityEventLog;
+
+/**
+ * Server-sent events for task updates, request changes and machine state changes. Each event's id is the event log's epoch and the event's offset,
+ * as epoch-offset: a client resumes by passing the Last-Event-ID header (or offset, the first offset it wants, optionally prefixed with epoch-), and
+ * without either it only gets new events. Offsets are per instance and restart with it, so clients should stream from the leader, which is the only
+ * instance that sees task updates.
+ *
+ * A client resuming from another epoch (a restart or leader failover), or from an offset this instance hasn't reached, first gets a reset event and
+ * then new events only. A client that fell further behind than the event log holds gets a gap event before the events it skipped to. After either,
+ * the client should re-list current state.
+ *
+ * Events are emitted by the instance that made the change, after it was written to ZK. Request changes and machine decomissions submitted to a
+ * non-leader instance only appear on that instance's stream, not the leader's.
+ */
+@Path("/events")
+public class EventResource {
+
+  private final static Logger LOG = LoggerFactory.getLogger(EventResource.class);
+
+  private final static String EVENT_STREAM_MEDIA_TYPE = "text/event-stream";
+  private final static int MAX_EVENTS_PER_WRITE = 100;
+
+  private final static String RESET_EVENT = "reset";
+  private final static String GAP_EVENT = "gap";
+
+  private final SingularityEventLog eventLog;
+  private final ObjectMapper objectMapper;
+  private final long keepAliveMillis;
+
+  @Inject
+  public EventResource(SingularityEventLog eventLog, ObjectMapper objectMapper, SingularityConfiguration configuration) {
+    this.eventLog = eventLog;
+    this.objectMapper = objectMapper;
+    this.keepAliveMillis = TimeUnit.SECONDS.toMillis(configuration.getEventStreamKeepAliveSeconds());
+  }
+
+  @GET
+  @Produces(EVENT_STREAM_MEDIA_TYPE)
+  public Response stream(@QueryParam("offset") Optional<String> offset, @HeaderParam("Last-Event-ID") Optional<String> lastEventId) {
+    final long nextOffset = eventLog.getNextOffset();
+
+    long requestedOffset = nextOffset;
+    boolean reset = false;
+
+    if (lastEventId.isPresent()) {
+      final Optional<Long> lastOffset = parseOffset(lastEventId.get(), true);
+
+      reset = !lastOffset.isPresent();
+      requestedOffset = lastOffset.isPresent() ? lastOffset.get() + 1 : nextOffset;
+    } else if (offset.isPresent()) {
+      final Optional<Long> firstOffset = parseOffset(offset.get(), false);
+
+      reset = !firstOffset.isPresent();
+      requestedOffset = firstOffset.isPresent() ? firstOffset.get() : nextOffset;
+    }
+
+    if (requestedOffset > nextOffset) {
+      reset = true;
+      requestedOffset = nextOffset;
+    }
+
+    final long fromOffset = requestedOffset;
+    final boolean sendReset = reset;
+
+    if (!eventLog.tryOpenStream()) {
+      throw new WebApplicationException(Status.SERVICE_UNAVAILABLE);
+    }
+
+    final StreamingOutput output = new StreamingOutput() {
+
+      @Override
+      public void write(OutputStream out) throws IOException {
+        try {
+          if (sendReset) {
+            writeMarker(out, RESET_EVENT, fromOffset, ImmutableMap.of("epoch", eventLog.getEpoch(), "nextOffset", fromOffset));
+          }
+
+          streamEvents(out, fromOffset);
+        } finally {
+          eventLog.closeStream();
+        }
+      }
+
+    };
+
+    return Response.ok(output, EVENT_STREAM_MEDIA_TYPE)
+        .header("Cache-Control", "no-cache")
+        .build();
+  }
+
+  /**
+   * Parses epoch-offset, or a bare offset when the epoch isn't required. Returns absent if the offset came from another epoch.
+   */
+  private Optional<Long> parseOffset(String id, boolean requireEpoch) {
+    final String trimmed = id.trim();
+    final int separator = trimmed.indexOf('-', 1);
+
+    try {
+      if (separator < 0) {
+        return requireEpoch ? Optional.<Long> absent() : Optional.of(Math.max(0, Long.parseLong(trimmed)));
+      }
+
+      if (Long.parseLong(trimmed.substring(0, separator)) != eventLog.getEpoch()) {
+        return Optional.absent();
+      }
+
+      return Optional.of(Math.max(-1, Long.parseLong(trimmed.substring(separator + 1))));
+    } catch (NumberFormatException nfe) {
+      throw new WebApplicationException(Status.BAD_REQUEST);
+    }
+  }
+
+  private String getEventId(long offset) {
+    return String.format("%s-%s", eventLog.getEpoch(), offset);
+  }
+
+  /**
+   * Carries the id of the event before fromOffset, so a client reconnecting right after it resumes from fromOffset.
+   */
+  private void writeMarker(OutputStream out, String type, long fromOffset, Object data) throws IOException {
+    out.write(String.format("id: %s\nevent: %s\ndata: ", getEventId(fromOffset - 1), type).getBytes(StandardCharsets.UTF_8));
+    out.write(objectMapper.writeValueAsBytes(data));
+    out.write("\n\n".getBytes(StandardCharsets.UTF_8));
+    out.flush();
+  }
+
+  private void streamEvents(OutputStream out, long fromOffset) throws IOException {
+    long nextOffset = fromOffset;
+
+    // the stream ends when the client goes away and a write fails
+    try {
+      while (true) {
+        final List<SingularityEvent> events = eventLog.awaitEvents(nextOffset, MAX_EVENTS_PER_WRITE, keepAliveMillis);
+
+        if (events.isEmpty()) {
+          out.write(": keepalive\n\n".getBytes(StandardCharsets.UTF_8));
+        } else if (events.get(0).getOffset() > nextOffset) {
+          LOG.info(String.format("Event stream fell behind, skipping from offset %s to %s", nextOffset, events.get(0).getOffset()));
+
+          writeMarker(out, GAP_EVENT, events.get(0).getOffset(), ImmutableMap.of("epoch", eventLog.getEpoch(), "fromOffset", nextOffset, "toOffset", events.get(0).getOffset()));
+        }
+
+        for (SingularityEvent event : events) {
+          out.write(String.format("id: %s\nevent: %s\ndata: ", getEventId(event.getOffset()), event.getType()).getBytes(StandardCharsets.UTF_8));
+          out.write(objectMapper.writeValueAsBytes(event));
+          out.write("\n\n".getBytes(StandardCharsets.UTF_8));
+
+          nextOffset = event.getOffset() + 1;
+        }
+
+        out.flush();
+      }
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+}
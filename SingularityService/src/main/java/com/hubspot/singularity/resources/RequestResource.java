@@ -14,6 +14,7 @@ import javax.ws.rs.core.MediaType;
 
 import com.google.common.base.Optional;
 import com.google.inject.Inject;
+import com.hubspot.singularity.SingularityEvent;
 import com.hubspot.singularity.SingularityPendingRequestId;
 import com.hubspot.singularity.SingularityPendingRequestId.PendingType;
 import com.hubspot.singularity.SingularityRequest;
@@ -22,6 +23,7 @@ import com.hubspot.singularity.data.RequestManager;
 import com.hubspot.singularity.data.RequestManager.PersistResult;
 import com.hubspot.singularity.data.SingularityRequestValidator;
 import com.hubspot.singularity.data.history.HistoryManager;
+import com.hubspot.singularity.hooks.SingularityEventLog;
 
 @Path("/requests")
 @Produces({ MediaType.APPLICATION_JSON })
@@ -29,11 +31,13 @@ public class RequestResource {
 
   private final RequestManager requestManager;
   private final HistoryManager historyManager;
+  private final SingularityEventLog eventLog;
   
   @Inject
-  public RequestResource(RequestManager requestManager, HistoryManager historyManager) {
+  public RequestResource(RequestManager requestManager, HistoryManager historyManager, SingularityEventLog eventLog) {
     this.requestManager = requestManager;
     this.historyManager = historyManager;
+    this.eventLog = eventLog;
   }
 
   @POST
@@ -46,7 +50,10 @@ public class RequestResource {
     
     requestManager.addToPendingQueue(new SingularityPendingRequestId(request.getId()));
   
-    historyManager.saveRequestHistoryUpdate(request, result == PersistResult.CREATED ? RequestState.CREATED : RequestState.UPDATED, user);
+    final RequestState requestState = result == PersistResult.CREATED ? RequestState.CREATED : RequestState.UPDATED;
+    
+    historyManager.saveRequestHistoryUpdate(request, requestState, user);
+    eventLog.append(SingularityEvent.requestUpdate(request, requestState));
     
     return request;
   }
@@ -81,6 +88,7 @@ public class RequestResource {
   
     if (request.isPresent()) {
       historyManager.saveRequestHistoryUpdate(request.get(), RequestState.DELETED, user);
+      eventLog.append(SingularityEvent.requestUpdate(request.get(), RequestState.DELETED));
     }
     
     return request;
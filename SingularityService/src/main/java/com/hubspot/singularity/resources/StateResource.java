@@ -9,6 +9,7 @@ import javax.ws.rs.core.MediaType;
 
 import com.google.inject.Inject;
 import com.hubspot.singularity.SingularityHostState;
+import com.hubspot.singularity.SingularitySchedulerEventStats;
 import com.hubspot.singularity.SingularityState;
 import com.hubspot.singularity.data.RackManager;
 import com.hubspot.singularity.data.RequestManager;
@@ -16,6 +17,7 @@ import com.hubspot.singularity.data.SlaveManager;
 import com.hubspot.singularity.data.StateManager;
 import com.hubspot.singularity.data.TaskManager;
 import com.hubspot.singularity.hooks.WebhookManager;
+import com.hubspot.singularity.mesos.SingularitySchedulerEventLoop;
 
 @Path("/state")
 @Produces({ MediaType.APPLICATION_JSON })
@@ -27,15 +29,17 @@ public class StateResource {
   private final SlaveManager slaveManager;
   private final RackManager rackManager;
   private final StateManager stateManager;
+  private final SingularitySchedulerEventLoop eventLoop;
   
   @Inject
-  public StateResource(RequestManager requestManager, TaskManager taskManager, StateManager stateManager, WebhookManager webhookManager, SlaveManager slaveManager, RackManager rackManager) {
+  public StateResource(RequestManager requestManager, TaskManager taskManager, StateManager stateManager, WebhookManager webhookManager, SlaveManager slaveManager, RackManager rackManager, SingularitySchedulerEventLoop eventLoop) {
     this.requestManager = requestManager;
     this.taskManager = taskManager;
     this.stateManager = stateManager;
     this.webhookManager = webhookManager;
     this.slaveManager = slaveManager;
     this.rackManager = rackManager;
+    this.eventLoop = eventLoop;
   }
 
   @GET
@@ -60,7 +64,9 @@ public class StateResource {
     
     final List<SingularityHostState> states = stateManager.getHostStates();
     
-    return new SingularityState(activeTasks, requests, scheduledTasks, pendingRequests, cleaningRequests, activeSlaves, deadSlaves, decomissioningSlaves, activeRacks, deadRacks, decomissioningRacks, numWebhooks, cleaningTasks, states);
+    final List<SingularitySchedulerEventStats> schedulerEventStats = eventLoop.getStats();
+    
+    return new SingularityState(activeTasks, requests, scheduledTasks, pendingRequests, cleaningRequests, activeSlaves, deadSlaves, decomissioningSlaves, activeRacks, deadRacks, decomissioningRacks, numWebhooks, cleaningTasks, states, schedulerEventStats);
   }
   
 }
@@ -4,6 +4,7 @@ import java.util.List;
 
 import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
+import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
@@ -17,6 +18,7 @@ import com.hubspot.singularity.SingularityTask;
 import com.hubspot.singularity.SingularityTaskCleanup;
 import com.hubspot.singularity.SingularityTaskCleanup.CleanupType;
 import com.hubspot.singularity.SingularityTaskRequest;
+import com.hubspot.singularity.SingularityTaskSummary;
 import com.hubspot.singularity.data.RequestManager;
 import com.hubspot.singularity.data.TaskManager;
 import com.sun.jersey.api.NotFoundException;
@@ -48,6 +50,18 @@ public class TaskResource {
     return taskManager.getActiveTasks();
   }
   
+  @GET
+  @Path("/active/summaries")
+  public List<SingularityTaskSummary> getActiveTaskSummaries() {
+    return taskManager.getActiveTaskSummaries();
+  }
+  
+  @POST
+  @Path("/active/resync")
+  public int resyncActiveTasks() {
+    return taskManager.resyncActiveTasks();
+  }
+  
   @GET
   @Path("/cleaning")
   public List<SingularityTaskCleanup> getCleaningTasks() {
@@ -57,13 +71,13 @@ public class TaskResource {
   @DELETE
   @Path("/task/{taskId}")
   public String deleteTask(@PathParam("taskId") String taskId, @QueryParam("user") Optional<String> user) {
-    Optional<SingularityTask> task = taskManager.getActiveTask(taskId);
+    Optional<SingularityTaskSummary> task = taskManager.getActiveTaskSummary(taskId);
     
     if (!task.isPresent()) {
       throw new NotFoundException(String.format("Couldn't find active task with id %s", taskId));
     }
     
-    return taskManager.createCleanupTask(new SingularityTaskCleanup(user, CleanupType.USER_REQUESTED, System.currentTimeMillis(), taskId, task.get().getTaskRequest().getRequest().getId())).name();
+    return taskManager.createCleanupTask(new SingularityTaskCleanup(user, CleanupType.USER_REQUESTED, System.currentTimeMillis(), taskId, task.get().getRequestId())).name();
   }
   
 }
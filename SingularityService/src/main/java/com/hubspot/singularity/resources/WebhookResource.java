@@ -12,6 +12,7 @@ import javax.ws.rs.Produces;
 import javax.ws.rs.core.MediaType;
 
 import com.google.inject.Inject;
+import com.hubspot.singularity.SingularityWebhookStats;
 import com.hubspot.singularity.hooks.WebhookManager;
 
 @Path("/webhooks")
@@ -37,6 +38,12 @@ public class WebhookResource {
   public List<String> getWebhooks() {
     return webhookManager.getWebhooks();
   }
+  
+  @GET
+  @Path("/stats")
+  public List<SingularityWebhookStats> getWebhookStats() {
+    return webhookManager.getStats();
+  }
  
   @DELETE
   @Path("/{hook}")
@@ -7,8 +7,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Optional;
+import com.google.common.collect.ListMultimap;
 import com.google.inject.Inject;
-import com.hubspot.singularity.SingularityDriverManager;
 import com.hubspot.singularity.SingularityPendingTaskId;
 import com.hubspot.singularity.SingularityRequest;
 import com.hubspot.singularity.SingularitySlave;
@@ -27,27 +27,30 @@ public class SingularityCleaner extends SingularitySchedulerBase {
   
   private final TaskManager taskManager;
   private final RequestManager requestManager;
-  private final SingularityDriverManager driverManager;
+  private final SingularityTaskKiller taskKiller;
   
   private final SlaveManager slaveManager;
   private final RackManager rackManager;
   
+  private final SingularityCronScheduleCache cronScheduleCache;
+  
   private final long killTasksAfterNewestTaskIsAtLeastMillis;
   
   @Inject
-  public SingularityCleaner(TaskManager taskManager, RequestManager requestManager, SingularityDriverManager driverManager, SlaveManager slaveManager, RackManager rackManager, SingularityConfiguration configuration) {
+  public SingularityCleaner(TaskManager taskManager, RequestManager requestManager, SingularityTaskKiller taskKiller, SlaveManager slaveManager, RackManager rackManager, SingularityCronScheduleCache cronScheduleCache, SingularityConfiguration configuration) {
     super(taskManager);
     
     this.taskManager = taskManager;
     this.requestManager = requestManager;
-    this.driverManager = driverManager;
+    this.taskKiller = taskKiller;
     this.slaveManager = slaveManager;
     this.rackManager = rackManager;
+    this.cronScheduleCache = cronScheduleCache;
     
     this.killTasksAfterNewestTaskIsAtLeastMillis = TimeUnit.SECONDS.toMillis(configuration.getKillDecomissionedTasksAfterNewTasksSeconds());
   }
 
-  private boolean shouldKillTask(SingularityTaskCleanup taskCleanup, List<SingularityTaskId> activeTaskIds, List<String> decomissioningRacks, List<SingularitySlave> decomissioningSlaves) {
+  private boolean shouldKillTask(SingularityTaskCleanup taskCleanup, List<String> decomissioningRacks, List<SingularitySlave> decomissioningSlaves) {
     if (taskCleanup.getCleanupTypeEnum() == CleanupType.USER_REQUESTED) {
       return true;
     }
@@ -59,7 +62,7 @@ public class SingularityCleaner extends SingularitySchedulerBase {
       return true;
     }
     
-    List<SingularityTaskId> matchingTasks = getMatchingActiveTaskIds(taskCleanup.getRequestId(), activeTaskIds, decomissioningRacks, decomissioningSlaves);
+    List<SingularityTaskId> matchingTasks = getMatchingActiveTaskIds(taskCleanup.getRequestId(), decomissioningRacks, decomissioningSlaves);
     
     final long now = System.currentTimeMillis();
     long newestTaskDurationMillis = Long.MAX_VALUE;
@@ -79,7 +82,11 @@ public class SingularityCleaner extends SingularitySchedulerBase {
     return false;
   }
   
-  private void drainRequestCleanupQueue() {
+  /**
+   * Must run on the scheduler event loop, so that deleting a request's scheduled tasks can't interleave with the pending queue drain or with
+   * rescheduling after a task finishes, either of which could otherwise recreate them.
+   */
+  public void drainRequestCleanupQueue() {
     final long start = System.currentTimeMillis();
 
     final List<String> cleanupRequests = requestManager.getCleanupRequestIds();
@@ -92,21 +99,22 @@ public class SingularityCleaner extends SingularitySchedulerBase {
     
     LOG.info(String.format("Cleaning up %s requests", cleanupRequests.size()));
     
-    final List<SingularityTaskId> activeTaskIds = taskManager.getActiveTaskIds();
-    final List<SingularityPendingTaskId> pendingTaskIds = taskManager.getScheduledTasks();
+    final ListMultimap<String, SingularityPendingTaskId> pendingTaskIds = SingularityPendingTaskId.groupByRequest(taskManager.getScheduledTasks());
     
     int numTasksKilled = 0;
     int numScheduledTasksRemoved = 0;
     
     for (String requestId : cleanupRequests) {
       if (!requestManager.fetchRequest(requestId).isPresent()) {
+        cronScheduleCache.invalidate(requestId);
         
-        for (SingularityTaskId matchingTaskId : SingularityTaskId.filter(activeTaskIds, requestId)) {
-          driverManager.kill(matchingTaskId.toString());
-          numTasksKilled++;
+        for (SingularityTaskId matchingTaskId : taskManager.getActiveTaskIdsForRequest(requestId)) {
+          if (taskKiller.kill(matchingTaskId.getId())) {
+            numTasksKilled++;
+          }
         }
      
-        for (SingularityPendingTaskId matchingTaskId : SingularityPendingTaskId.filter(pendingTaskIds, requestId)) {
+        for (SingularityPendingTaskId matchingTaskId : pendingTaskIds.get(requestId)) {
           taskManager.deleteScheduledTask(matchingTaskId.toString());
           numScheduledTasksRemoved++;
         }
@@ -118,15 +126,13 @@ public class SingularityCleaner extends SingularitySchedulerBase {
       requestManager.deleteCleanRequest(requestId);
     }
     
-    LOG.info(String.format("Killed %s tasks (removed %s scheduled) in %sms", numTasksKilled, numScheduledTasksRemoved, System.currentTimeMillis() - start));
-  }
-  
-  public void drainCleanupQueue() {
-    drainRequestCleanupQueue();
-    drainTaskCleanupQueue();
+    LOG.info(String.format("Queued kills for %s tasks (removed %s scheduled) in %sms", numTasksKilled, numScheduledTasksRemoved, System.currentTimeMillis() - start));
   }
   
-  private void drainTaskCleanupQueue() {
+  /**
+   * Safe to run concurrently with the scheduler event loop: every task cleanup re-checks the current state before acting on it, and kills are only queued.
+   */
+  public void drainTaskCleanupQueue() {
     final long start = System.currentTimeMillis();
 
     final List<SingularityTaskCleanup> cleanupTasks = taskManager.getCleanupTasks();
@@ -139,24 +145,32 @@ public class SingularityCleaner extends SingularitySchedulerBase {
     
     LOG.info(String.format("Cleaning up %s tasks", cleanupTasks.size()));
    
-    final List<SingularityTaskId> activeTaskIds = taskManager.getActiveTaskIds(); 
     final List<String> decomissioningRacks = rackManager.getDecomissioning();
     final List<SingularitySlave> decomissioningSlaves = slaveManager.getDecomissioningObjects();
     
     
     int killedTasks = 0;
+    int finishedTasks = 0;
     
     for (SingularityTaskCleanup cleanupTask : cleanupTasks) {
-      if (shouldKillTask(cleanupTask, activeTaskIds, decomissioningRacks, decomissioningSlaves)) {
-        driverManager.kill(cleanupTask.getTaskId());
+      if (taskKiller.isQueued(cleanupTask.getTaskId())) {
+        continue;
+      }
+      
+      if (!taskManager.getActiveTaskSummary(cleanupTask.getTaskId()).isPresent()) {
+        LOG.debug(String.format("Task %s finished before it was cleaned up", cleanupTask.getTaskId()));
         
         taskManager.deleteCleanupTask(cleanupTask.getTaskId());
+        
+        finishedTasks++;
+      } else if (shouldKillTask(cleanupTask, decomissioningRacks, decomissioningSlaves)) {
+        taskKiller.kill(cleanupTask.getTaskId());
       
         killedTasks++;
       }
     }
     
-    LOG.info(String.format("Killed %s tasks in %sms", killedTasks, System.currentTimeMillis() - start));
+    LOG.info(String.format("Queued kills for %s tasks (%s had already finished, %s queued in total) in %sms", killedTasks, finishedTasks, taskKiller.getNumQueued(), System.currentTimeMillis() - start));
   }
 
 }
@@ -0,0 +1,198 @@
+package com.hubspot.singularity.scheduler;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.cache.PathChildrenCache;
+import org.apache.curator.framework.recipes.cache.PathChildrenCache.StartMode;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheEvent;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Throwables;
+import com.google.common.io.Closeables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import com.hubspot.singularity.config.SingularityConfiguration;
+import com.hubspot.singularity.data.RequestManager;
+import com.hubspot.singularity.data.TaskManager;
+import com.hubspot.singularity.mesos.SingularityMesosSchedulerDelegator;
+
+/**
+ * Drains the cleanup queues whenever a node is added under the task or request cleanup roots. Task cleanups run on this processor's own thread, alongside
+ * offer handling; request cleanups are posted to the scheduler event loop because they delete scheduled tasks. Cleanups that can't be acted on yet (a
+ * decomissioned task waiting for its replacements) are retried every cleanupEverySeconds, but only while some remain.
+ */
+public class SingularityCleanupProcessor implements PathChildrenCacheListener {
+
+  private final static Logger LOG = LoggerFactory.getLogger(SingularityCleanupProcessor.class);
+
+  private final CuratorFramework curator;
+  private final SingularityCleaner cleaner;
+  private final SingularityTaskKiller taskKiller;
+  private final SingularityConfiguration configuration;
+  private final ScheduledExecutorService executorService;
+  private final AtomicBoolean drainQueued;
+
+  private PathChildrenCache taskCleanupCache;
+  private PathChildrenCache requestCleanupCache;
+  private ScheduledFuture<?> retry;
+  private SingularityMesosSchedulerDelegator mesosScheduler;
+
+  @Inject
+  public SingularityCleanupProcessor(CuratorFramework curator, SingularityConfiguration configuration, SingularityCleaner cleaner, SingularityTaskKiller taskKiller) {
+    this.curator = curator;
+    this.cleaner = cleaner;
+    this.taskKiller = taskKiller;
+    this.configuration = configuration;
+    this.drainQueued = new AtomicBoolean(false);
+
+    this.executorService = Executors.newScheduledThreadPool(1, new ThreadFactoryBuilder().setDaemon(true).setNameFormat("SingularityCleanupProcessor-%d").build());
+  }
+
+  public synchronized void start(SingularityMesosSchedulerDelegator mesosScheduler) {
+    this.mesosScheduler = mesosScheduler;
+    
+    LOG.info(String.format("Starting a cleanup processor (retrying every %s seconds while cleanups are pending)", configuration.getCleanupEverySeconds()));
+
+    taskCleanupCache = new PathChildrenCache(curator, TaskManager.CLEANUP_PATH_ROOT, false);
+    requestCleanupCache = new PathChildrenCache(curator, RequestManager.CLEANUP_PATH_ROOT, false);
+
+    try {
+      for (PathChildrenCache cache : new PathChildrenCache[] { taskCleanupCache, requestCleanupCache }) {
+        cache.getListenable().addListener(this);
+        cache.start(StartMode.POST_INITIALIZED_EVENT);
+      }
+    } catch (Exception e) {
+      throw Throwables.propagate(e);
+    }
+  }
+
+  @Override
+  public void childEvent(CuratorFramework client, PathChildrenCacheEvent event) throws Exception {
+    switch (event.getType()) {
+      case CHILD_ADDED:
+      case INITIALIZED:
+      case CONNECTION_RECONNECTED:
+        trigger();
+        break;
+      default:
+        break;
+    }
+  }
+
+  private void trigger() {
+    if (!drainQueued.compareAndSet(false, true)) {
+      return;
+    }
+
+    executorService.execute(new Runnable() {
+
+      @Override
+      public void run() {
+        drain();
+      }
+
+    });
+  }
+
+  private void drain() {
+    drainQueued.set(false);
+
+    if (hasPendingRequestCleanups()) {
+      postRequestCleanups();
+    }
+
+    try {
+      cleaner.drainTaskCleanupQueue();
+    } catch (Throwable t) {
+      LOG.error("While draining task cleanup queue", t);
+    }
+
+    if (hasPendingCleanups()) {
+      scheduleRetry();
+    }
+  }
+
+  private void postRequestCleanups() {
+    final SingularityMesosSchedulerDelegator scheduler;
+
+    synchronized (this) {
+      scheduler = mesosScheduler;
+    }
+
+    if (scheduler == null) {
+      return;
+    }
+
+    scheduler.postRequestCleanup(new Runnable() {
+
+      @Override
+      public void run() {
+        cleaner.drainRequestCleanupQueue();
+      }
+
+    });
+  }
+
+  private synchronized boolean hasPendingRequestCleanups() {
+    return requestCleanupCache != null && !requestCleanupCache.getCurrentData().isEmpty();
+  }
+
+  private synchronized boolean hasPendingCleanups() {
+    if (taskCleanupCache == null) {
+      return false;
+    }
+
+    return !taskCleanupCache.getCurrentData().isEmpty() || !requestCleanupCache.getCurrentData().isEmpty();
+  }
+
+  private synchronized void scheduleRetry() {
+    if (retry != null && !retry.isDone()) {
+      return;
+    }
+
+    retry = executorService.schedule(new Runnable() {
+
+      @Override
+      public void run() {
+        trigger();
+      }
+
+    }, configuration.getCleanupEverySeconds(), TimeUnit.SECONDS);
+  }
+
+  private final int WAIT_SECONDS = 1;
+
+  public void stop() {
+    LOG.info(String.format("Stopping cleanup processor (waiting %s seconds) ... ", WAIT_SECONDS));
+
+    synchronized (this) {
+      try {
+        Closeables.close(taskCleanupCache, true);
+        Closeables.close(requestCleanupCache, true);
+      } catch (Exception e) {
+        LOG.warn("While closing cleanup caches", e);
+      }
+
+      taskCleanupCache = null;
+      requestCleanupCache = null;
+      mesosScheduler = null;
+    }
+
+    try {
+      executorService.shutdownNow();
+      executorService.awaitTermination(WAIT_SECONDS, TimeUnit.SECONDS);
+    } catch (Throwable t) {
+      LOG.warn("While shutting down cleanup processor", t);
+    }
+
+    taskKiller.clear();
+  }
+
+}
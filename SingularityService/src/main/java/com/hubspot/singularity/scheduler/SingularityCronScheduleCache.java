@@ -0,0 +1,162 @@
+package com.hubspot.singularity.scheduler;
+
+import java.text.ParseException;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.quartz.CronExpression;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Objects;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Maps;
+import com.google.inject.Inject;
+import com.hubspot.singularity.SingularityRequest;
+import com.hubspot.singularity.config.SingularityConfiguration;
+
+/**
+ * Compiled cron schedules keyed by request id, along with a batch of upcoming fire times. An entry is only used while the request's version
+ * and schedule match the ones it was compiled from.
+ */
+public class SingularityCronScheduleCache {
+
+  private final static Logger LOG = LoggerFactory.getLogger(SingularityCronScheduleCache.class);
+
+  private final int fireTimesToPrecompute;
+  private final ConcurrentMap<String, CompiledSchedule> schedules;
+
+  private final Meter compilations;
+
+  @Inject
+  public SingularityCronScheduleCache(SingularityConfiguration configuration, MetricRegistry metrics) {
+    this.fireTimesToPrecompute = Math.max(1, configuration.getCronFireTimesToPrecompute());
+    this.schedules = new ConcurrentHashMap<>();
+
+    this.compilations = metrics.meter(MetricRegistry.name(SingularityCronScheduleCache.class, "compilations"));
+
+    metrics.register(MetricRegistry.name(SingularityCronScheduleCache.class, "size"), new Gauge<Integer>() {
+
+      @Override
+      public Integer getValue() {
+        return schedules.size();
+      }
+
+    });
+  }
+
+  private static class CompiledSchedule {
+
+    private final String version;
+    private final String schedule;
+    private final CronExpression cronExpression;
+    private final Deque<Long> upcoming;
+
+    private long computedAfter;
+
+    private CompiledSchedule(String version, String schedule, CronExpression cronExpression) {
+      this.version = version;
+      this.schedule = schedule;
+      this.cronExpression = cronExpression;
+      this.upcoming = new ArrayDeque<>();
+    }
+
+    private boolean matches(SingularityRequest request) {
+      return Objects.equal(version, request.getVersion()) && schedule.equals(request.getSchedule());
+    }
+
+  }
+
+  /**
+   * Returns the first fire time of the request's schedule strictly after the given time, or -1 if the schedule never fires again.
+   */
+  public long getNextFireTime(SingularityRequest request, long after) {
+    final CompiledSchedule compiled = getCompiledSchedule(request);
+
+    synchronized (compiled) {
+      while (!compiled.upcoming.isEmpty() && compiled.upcoming.peekFirst() <= after) {
+        compiled.upcoming.pollFirst();
+      }
+
+      // upcoming holds every fire time between computedAfter and its last entry, so it can't answer for earlier times
+      if (compiled.upcoming.isEmpty() || after < compiled.computedAfter) {
+        precompute(compiled, after);
+      }
+
+      return compiled.upcoming.isEmpty() ? -1 : compiled.upcoming.peekFirst();
+    }
+  }
+
+  /**
+   * Compiles and computes the next fire time of each scheduled request in one pass. Requests without a schedule are skipped.
+   */
+  public Map<String, Long> getNextFireTimes(Collection<SingularityRequest> requests, long after) {
+    final long start = System.currentTimeMillis();
+    final Map<String, Long> nextFireTimes = Maps.newHashMapWithExpectedSize(requests.size());
+
+    for (SingularityRequest request : requests) {
+      if (!request.isScheduled()) {
+        continue;
+      }
+
+      try {
+        nextFireTimes.put(request.getId(), getNextFireTime(request, after));
+      } catch (Throwable t) {
+        LOG.warn(String.format("Couldn't compute next fire time of %s (schedule: %s)", request.getId(), request.getSchedule()), t);
+      }
+    }
+
+    LOG.info(String.format("Computed next fire times of %s scheduled requests in %sms", nextFireTimes.size(), System.currentTimeMillis() - start));
+
+    return nextFireTimes;
+  }
+
+  public void invalidate(String requestId) {
+    schedules.remove(requestId);
+  }
+
+  private CompiledSchedule getCompiledSchedule(SingularityRequest request) {
+    final CompiledSchedule existing = schedules.get(request.getId());
+
+    if (existing != null && existing.matches(request)) {
+      return existing;
+    }
+
+    try {
+      final CompiledSchedule compiled = new CompiledSchedule(request.getVersion(), request.getSchedule(), new CronExpression(request.getSchedule()));
+
+      compilations.mark();
+      schedules.put(request.getId(), compiled);
+
+      return compiled;
+    } catch (ParseException pe) {
+      throw Throwables.propagate(pe);
+    }
+  }
+
+  private void precompute(CompiledSchedule compiled, long after) {
+    compiled.upcoming.clear();
+    compiled.computedAfter = after;
+
+    Date next = new Date(after);
+
+    for (int i = 0; i < fireTimesToPrecompute; i++) {
+      next = compiled.cronExpression.getNextValidTimeAfter(next);
+
+      if (next == null) {
+        break;
+      }
+
+      compiled.upcoming.addLast(next.getTime());
+    }
+  }
+
+}
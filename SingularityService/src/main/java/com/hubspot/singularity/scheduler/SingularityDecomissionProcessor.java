@@ -0,0 +1,156 @@
+package com.hubspot.singularity.scheduler;
+
+import java.util.List;
+import java.util.Set;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.PathChildrenCache;
+import org.apache.curator.framework.recipes.cache.PathChildrenCache.StartMode;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheEvent;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheListener;
+import org.apache.curator.utils.ZKPaths;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Sets;
+import com.google.common.io.Closeables;
+import com.google.inject.Inject;
+import com.hubspot.singularity.SingularityMachineAbstraction;
+import com.hubspot.singularity.SingularityMachineAbstraction.SingularityMachineState;
+import com.hubspot.singularity.data.AbstractMachineManager;
+import com.hubspot.singularity.data.RackManager;
+import com.hubspot.singularity.data.SlaveManager;
+import com.hubspot.singularity.mesos.SingularityMesosSchedulerDelegator;
+
+/**
+ * Watches the slave and rack decomissioning roots and hands machines that entered the DECOMISSIONING state to the scheduler, on the scheduler
+ * event loop. Changes that arrive while a check is waiting are folded into it.
+ */
+public class SingularityDecomissionProcessor {
+
+  private final static Logger LOG = LoggerFactory.getLogger(SingularityDecomissionProcessor.class);
+
+  private final CuratorFramework curator;
+  private final SlaveManager slaveManager;
+  private final RackManager rackManager;
+  private final SingularityScheduler scheduler;
+
+  private final Set<String> changedSlaveIds;
+  private final Set<String> changedRackIds;
+
+  private PathChildrenCache slaveCache;
+  private PathChildrenCache rackCache;
+
+  @Inject
+  public SingularityDecomissionProcessor(CuratorFramework curator, SlaveManager slaveManager, RackManager rackManager, SingularityScheduler scheduler) {
+    this.curator = curator;
+    this.slaveManager = slaveManager;
+    this.rackManager = rackManager;
+    this.scheduler = scheduler;
+
+    this.changedSlaveIds = Sets.newHashSet();
+    this.changedRackIds = Sets.newHashSet();
+  }
+
+  public synchronized void start(SingularityMesosSchedulerDelegator mesosScheduler) {
+    LOG.info("Starting decomission processor");
+
+    slaveCache = watch(mesosScheduler, slaveManager, changedSlaveIds);
+    rackCache = watch(mesosScheduler, rackManager, changedRackIds);
+  }
+
+  public synchronized void stop() {
+    LOG.info("Stopping decomission processor");
+
+    try {
+      Closeables.close(slaveCache, true);
+      Closeables.close(rackCache, true);
+    } catch (Exception e) {
+      LOG.warn("While closing decomission processor", e);
+    }
+
+    slaveCache = null;
+    rackCache = null;
+  }
+
+  private <T extends SingularityMachineAbstraction> PathChildrenCache watch(final SingularityMesosSchedulerDelegator mesosScheduler, final AbstractMachineManager<T> manager, final Set<String> changedIds) {
+    final PathChildrenCache cache = new PathChildrenCache(curator, manager.getDecomissioningRoot(), true);
+
+    cache.getListenable().addListener(new PathChildrenCacheListener() {
+
+      @Override
+      public void childEvent(CuratorFramework client, PathChildrenCacheEvent event) throws Exception {
+        switch (event.getType()) {
+          case CHILD_ADDED:
+          case CHILD_UPDATED:
+            if (isDecomissioning(manager, event.getData())) {
+              changed(mesosScheduler, changedIds, ZKPaths.getNodeFromPath(event.getData().getPath()));
+            }
+            break;
+          case CONNECTION_RECONNECTED:
+            // changes made while disconnected may not produce events of their own
+            for (ChildData childData : cache.getCurrentData()) {
+              if (isDecomissioning(manager, childData)) {
+                changed(mesosScheduler, changedIds, ZKPaths.getNodeFromPath(childData.getPath()));
+              }
+            }
+            break;
+          default:
+            break;
+        }
+      }
+
+    });
+
+    try {
+      // existing children are delivered as CHILD_ADDED, so machines left decomissioning by a previous leader are picked up here
+      cache.start(StartMode.POST_INITIALIZED_EVENT);
+    } catch (Exception e) {
+      throw Throwables.propagate(e);
+    }
+
+    return cache;
+  }
+
+  private <T extends SingularityMachineAbstraction> boolean isDecomissioning(AbstractMachineManager<T> manager, ChildData childData) {
+    if (childData.getData() == null) {
+      return false;
+    }
+
+    try {
+      return manager.fromBytes(childData.getData()).getStateEnum() == SingularityMachineState.DECOMISSIONING;
+    } catch (Throwable t) {
+      LOG.warn(String.format("Couldn't read decomissioning machine at %s", childData.getPath()), t);
+      return false;
+    }
+  }
+
+  private void changed(SingularityMesosSchedulerDelegator mesosScheduler, Set<String> changedIds, String objectId) {
+    synchronized (changedIds) {
+      changedIds.add(objectId);
+    }
+
+    mesosScheduler.postDecomission(new Runnable() {
+
+      @Override
+      public void run() {
+        scheduler.checkForDecomissions(drain(changedSlaveIds), drain(changedRackIds));
+      }
+
+    });
+  }
+
+  private List<String> drain(Set<String> changedIds) {
+    synchronized (changedIds) {
+      final List<String> drained = ImmutableList.copyOf(changedIds);
+
+      changedIds.clear();
+
+      return drained;
+    }
+  }
+
+}
@@ -1,31 +1,35 @@
 package com.hubspot.singularity.scheduler;
 
-import java.text.ParseException;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
-import org.quartz.CronExpression;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Optional;
-import com.google.common.base.Throwables;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.inject.Inject;
+import com.hubspot.singularity.SingularityMachineAbstraction;
+import com.hubspot.singularity.SingularityMachineAbstraction.SingularityMachineState;
 import com.hubspot.singularity.SingularityPendingRequestId;
 import com.hubspot.singularity.SingularityPendingRequestId.PendingType;
 import com.hubspot.singularity.SingularityPendingTaskId;
 import com.hubspot.singularity.SingularityRack;
 import com.hubspot.singularity.SingularityRequest;
 import com.hubspot.singularity.SingularitySlave;
-import com.hubspot.singularity.SingularityTask;
 import com.hubspot.singularity.SingularityTaskCleanup;
 import com.hubspot.singularity.SingularityTaskCleanup.CleanupType;
 import com.hubspot.singularity.SingularityTaskId;
 import com.hubspot.singularity.SingularityTaskRequest;
+import com.hubspot.singularity.data.AbstractMachineManager;
 import com.hubspot.singularity.data.RackManager;
 import com.hubspot.singularity.data.RequestManager;
 import com.hubspot.singularity.data.SlaveManager;
@@ -41,60 +45,74 @@ public class SingularityScheduler extends SingularitySchedulerBase {
   private final SlaveManager slaveManager;
   private final RackManager rackManager;
   
+  private final SingularityCronScheduleCache cronScheduleCache;
+  
   @Inject
-  public SingularityScheduler(TaskManager taskManager, RequestManager requestManager, SlaveManager slaveManager, RackManager rackManager) {
+  public SingularityScheduler(TaskManager taskManager, RequestManager requestManager, SlaveManager slaveManager, RackManager rackManager, SingularityCronScheduleCache cronScheduleCache) {
     super(taskManager);
     this.taskManager = taskManager;
     this.requestManager = requestManager;
     this.slaveManager = slaveManager;
     this.rackManager = rackManager;
+    this.cronScheduleCache = cronScheduleCache;
   }
   
-  private void checkTaskForDecomissionCleanup(final Set<String> requestIdsToReschedule, final Set<SingularityTaskId> matchingTaskIds, SingularityTask task, String decomissioningObject) {
-    requestIdsToReschedule.add(task.getTaskRequest().getRequest().getId());
+  private void checkTaskForDecomissionCleanup(final Set<String> requestIdsToReschedule, final Set<SingularityTaskId> matchingTaskIds, SingularityTaskId taskId, String decomissioningObject) {
+    requestIdsToReschedule.add(taskId.getRequestId());
     
-    matchingTaskIds.add(task.getTaskId());
+    matchingTaskIds.add(taskId);
 
-    if (!task.getTaskRequest().getRequest().isScheduled()) {
-      LOG.trace(String.format("Scheduling a cleanup task for %s due to decomissioning %s", task.getTaskId(), decomissioningObject));
+    final Optional<SingularityRequest> maybeRequest = requestManager.fetchRequest(taskId.getRequestId());
+    
+    if (!maybeRequest.isPresent() || !maybeRequest.get().isScheduled()) {
+      LOG.trace(String.format("Scheduling a cleanup task for %s due to decomissioning %s", taskId, decomissioningObject));
       
-      taskManager.createCleanupTask(new SingularityTaskCleanup(Optional.<String> absent(), CleanupType.DECOMISSIONING, System.currentTimeMillis(), task.getTaskId().getId(), task.getTaskRequest().getRequest().getId()));
+      taskManager.createCleanupTask(new SingularityTaskCleanup(Optional.<String> absent(), CleanupType.DECOMISSIONING, System.currentTimeMillis(), taskId.getId(), taskId.getRequestId()));
     } else {
-      LOG.trace(String.format("Not adding scheduled task %s to cleanup queue", task.getTaskId()));
+      LOG.trace(String.format("Not adding scheduled task %s to cleanup queue", taskId));
     }
   }
   
-  public void checkForDecomissions(List<SingularityTaskId> activeTaskIds) {
+  private <T extends SingularityMachineAbstraction> List<T> getStillDecomissioning(AbstractMachineManager<T> manager, Collection<String> objectIds) {
+    final List<T> decomissioning = Lists.newArrayListWithCapacity(objectIds.size());
+    
+    for (String objectId : objectIds) {
+      final Optional<T> maybeObject = manager.getDecomissioning(objectId);
+      
+      if (maybeObject.isPresent() && maybeObject.get().getStateEnum() == SingularityMachineState.DECOMISSIONING) {
+        decomissioning.add(maybeObject.get());
+      }
+    }
+    
+    return decomissioning;
+  }
+  
+  /**
+   * Schedules cleanups for the tasks on the given slaves and racks, if they are still decomissioning, and marks them as decomissioned.
+   */
+  public void checkForDecomissions(Collection<String> slaveIds, Collection<String> rackIds) {
     final long start = System.currentTimeMillis();
     
     final Set<String> requestIdsToReschedule = Sets.newHashSet();
     final Set<SingularityTaskId> matchingTaskIds = Sets.newHashSet();
     
-    final List<SingularitySlave> slaves = slaveManager.getDecomissioningObjectsFiltered();
+    final List<SingularitySlave> slaves = getStillDecomissioning(slaveManager, slaveIds);
     
     for (SingularitySlave slave : slaves) {
-      for (SingularityTaskId activeTaskId : activeTaskIds) {
-        if (activeTaskId.getHost().equals(slave.getHost())) {
-          Optional<SingularityTask> maybeTask = taskManager.getActiveTask(activeTaskId.getId());
-          if (slave.getId().equals(maybeTask.get().getOffer().getSlaveId().getValue())) {
-            checkTaskForDecomissionCleanup(requestIdsToReschedule, matchingTaskIds, maybeTask.get(), slave.toString());
-          }
-        }
+      for (SingularityTaskId activeTaskId : taskManager.getActiveTaskIdsOnSlave(slave.getId())) {
+        checkTaskForDecomissionCleanup(requestIdsToReschedule, matchingTaskIds, activeTaskId, slave.toString());
       }
     }
     
-    final List<SingularityRack> racks = rackManager.getDecomissioningObjectsFiltered();
+    final List<SingularityRack> racks = getStillDecomissioning(rackManager, rackIds);
     
     for (SingularityRack rack : racks) {
-      for (SingularityTaskId activeTaskId : activeTaskIds) {
+      for (SingularityTaskId activeTaskId : taskManager.getActiveTaskIdsOnRack(rack.getId())) {
         if (matchingTaskIds.contains(activeTaskId)) {
           continue;
         }
     
-        if (rack.getId().equals(activeTaskId.getRackId())) {
-          Optional<SingularityTask> maybeTask = taskManager.getActiveTask(activeTaskId.getId());
-          checkTaskForDecomissionCleanup(requestIdsToReschedule, matchingTaskIds, maybeTask.get(), rack.toString());
-        }
+        checkTaskForDecomissionCleanup(requestIdsToReschedule, matchingTaskIds, activeTaskId, rack.toString());
       }
     }
     
@@ -113,10 +131,15 @@ public class SingularityScheduler extends SingularitySchedulerBase {
       rackManager.markAsDecomissioned(rack);
     }
 
-    LOG.info(String.format("Found %s decomissioning slaves, %s decomissioning racks, rescheduling %s requests and scheduling %s tasks for cleanup in %sms", slaves.size(), racks.size(), requestIdsToReschedule.size(), matchingTaskIds.size(), System.currentTimeMillis() - start));
+    LOG.info(String.format("Processed %s decomissioning slaves and %s decomissioning racks (of %s and %s changed), rescheduling %s requests and scheduling %s tasks for cleanup in %sms", slaves.size(), racks.size(), 
+        slaveIds.size(), rackIds.size(), requestIdsToReschedule.size(), matchingTaskIds.size(), System.currentTimeMillis() - start));
   }
   
-  public void drainPendingQueue(final List<SingularityTaskId> activeTaskIds) {
+  /**
+   * Collapses pending entries by request id (an immediate run wins over a regular one), then applies the resulting scheduled task changes and
+   * removes the drained entries in batched transactions.
+   */
+  public void drainPendingQueue() {
     final long start = System.currentTimeMillis();
     
     final List<SingularityPendingRequestId> pendingRequests = requestManager.getPendingRequestIds();
@@ -127,92 +150,130 @@ public class SingularityScheduler extends SingularitySchedulerBase {
       return;
     }
     
-    final List<SingularityPendingTaskId> scheduledTasks = taskManager.getScheduledTasks();
+    final Map<String, PendingType> pendingTypes = Maps.newLinkedHashMap();
+    
+    for (SingularityPendingRequestId pendingRequest : pendingRequests) {
+      final PendingType existing = pendingTypes.get(pendingRequest.getRequestId());
+      
+      if (existing == null || pendingRequest.getPendingTypeEnum().ordinal() < existing.ordinal()) {
+        pendingTypes.put(pendingRequest.getRequestId(), pendingRequest.getPendingTypeEnum());
+      }
+    }
+    
+    final ListMultimap<String, SingularityPendingTaskId> scheduledTasks = SingularityPendingTaskId.groupByRequest(taskManager.getScheduledTasks());
     final List<String> decomissioningRacks = rackManager.getDecomissioning();
     final List<SingularitySlave> decomissioningSlaves = slaveManager.getDecomissioningObjects();
     
+    final List<SingularityPendingTaskId> toDelete = Lists.newArrayList();
+    final List<SingularityPendingTaskId> toCreate = Lists.newArrayList();
+    
     int numScheduledTasks = 0;
     int obsoleteRequests = 0;
     
-    for (SingularityPendingRequestId pendingRequest : pendingRequests) {
-      Optional<SingularityRequest> maybeRequest = requestManager.fetchRequest(pendingRequest.getRequestId());
+    for (Map.Entry<String, PendingType> pending : pendingTypes.entrySet()) {
+      Optional<SingularityRequest> maybeRequest = requestManager.fetchRequest(pending.getKey());
       
       if (maybeRequest.isPresent()) {
-        numScheduledTasks += scheduleTasks(scheduledTasks, activeTaskIds, decomissioningRacks, decomissioningSlaves, maybeRequest.get(), pendingRequest.getPendingTypeEnum()).size();
+        final List<SingularityPendingTaskId> newTaskIds = getScheduledTaskIds(decomissioningRacks, decomissioningSlaves, maybeRequest.get(), pending.getValue());
+        
+        diff(scheduledTasks.get(pending.getKey()), newTaskIds, toDelete, toCreate);
+        
+        numScheduledTasks += newTaskIds.size();
       } else {
         obsoleteRequests++;
       }
-      
-      requestManager.deletePendingRequest(pendingRequest.toString());
     }
     
-    LOG.info(String.format("Scheduled %s requests (%s obsolete) in %sms", numScheduledTasks, obsoleteRequests, System.currentTimeMillis() - start));
-  }
+    taskManager.deleteScheduledTasks(toDelete);
+    taskManager.persistScheduleTasks(toCreate);
     
-  public List<SingularityTaskRequest> getDueTasks() {
-    final List<SingularityPendingTaskId> tasks = taskManager.getScheduledTasks();
-      
-    final long now = System.currentTimeMillis();
+    requestManager.deletePendingRequests(pendingRequests);
     
-    final List<SingularityPendingTaskId> dueTaskIds = Lists.newArrayListWithCapacity(tasks.size());
+    LOG.info(String.format("Scheduled %s tasks for %s requests (%s pending entries, %s obsolete, %s scheduled tasks removed, %s created) in %sms", numScheduledTasks, pendingTypes.size(), pendingRequests.size(), obsoleteRequests, 
+        toDelete.size(), toCreate.size(), System.currentTimeMillis() - start));
+  }
+  
+  private void diff(List<SingularityPendingTaskId> existingTaskIds, List<SingularityPendingTaskId> newTaskIds, List<SingularityPendingTaskId> toDelete, List<SingularityPendingTaskId> toCreate) {
+    final Set<SingularityPendingTaskId> existing = Sets.newHashSet(existingTaskIds);
     
-    for (SingularityPendingTaskId task : tasks) {
-      if (task.getNextRunAt() <= now) {
-        dueTaskIds.add(task);
+    for (SingularityPendingTaskId newTaskId : newTaskIds) {
+      if (!existing.remove(newTaskId)) {
+        toCreate.add(newTaskId);
       }
     }
     
+    toDelete.addAll(existing);
+  }
+    
+  public List<SingularityTaskRequest> getDueTasks() {
+    final List<SingularityPendingTaskId> dueTaskIds = taskManager.getDueScheduledTasks(System.currentTimeMillis());
+    
     final List<SingularityTaskRequest> dueTasks = requestManager.fetchTasks(dueTaskIds);
     Collections.sort(dueTasks);
   
     return dueTasks;
   }
   
-  private void deleteScheduledTasks(final List<SingularityPendingTaskId> scheduledTaskIds, String requestId) {
-    for (SingularityPendingTaskId taskId : SingularityPendingTaskId.filter(scheduledTaskIds, requestId)) {
-      taskManager.deleteScheduledTask(taskId.toString());
-    }
-  }
-
-  public List<SingularityPendingTaskId> scheduleTasks(final List<SingularityPendingTaskId> scheduledTaskIds, final List<SingularityTaskId> activeTaskIds, List<String> decomissioningRacks, List<SingularitySlave> decomissioningSlaves, SingularityRequest request, PendingType pendingType) {
-    deleteScheduledTasks(scheduledTaskIds, request.getId());
+  /**
+   * Replaces the request's scheduled tasks (requestScheduledTaskIds must only hold tasks of this request) with tasks for its missing instances.
+   */
+  public List<SingularityPendingTaskId> scheduleTasks(final List<SingularityPendingTaskId> requestScheduledTaskIds, List<String> decomissioningRacks, List<SingularitySlave> decomissioningSlaves, SingularityRequest request, PendingType pendingType) {
+    final List<SingularityPendingTaskId> scheduledTasks = getScheduledTaskIds(decomissioningRacks, decomissioningSlaves, request, pendingType);
+    
+    final List<SingularityPendingTaskId> toDelete = Lists.newArrayList();
+    final List<SingularityPendingTaskId> toCreate = Lists.newArrayList();
     
-    final List<SingularityPendingTaskId> scheduledTasks = getScheduledTaskIds(activeTaskIds, decomissioningRacks, decomissioningSlaves, request, pendingType);
+    diff(requestScheduledTaskIds, scheduledTasks, toDelete, toCreate);
     
-    taskManager.persistScheduleTasks(scheduledTasks);
+    taskManager.deleteScheduledTasks(toDelete);
+    taskManager.persistScheduleTasks(toCreate);
   
     return scheduledTasks;
   }
   
-  public void scheduleOnCompletion(String stringTaskId) {
-    SingularityTaskId taskId = SingularityTaskId.fromString(stringTaskId);
-    
-    Optional<SingularityRequest> maybeRequest = requestManager.fetchRequest(taskId.getRequestId());
-    
-    if (!maybeRequest.isPresent()) {
-      // TODO what about failures?
-      LOG.warn(String.format("Not scheduling a new task, due to no existing request for %s", taskId.getRequestId()));
+  /**
+   * Reschedules each request once, however many of its tasks finished, reading scheduled tasks and decomissioning machines once for all of them.
+   */
+  public void scheduleOnCompletion(Collection<String> requestIds) {
+    if (requestIds.isEmpty()) {
       return;
     }
     
-    SingularityRequest request = maybeRequest.get();
+    final long start = System.currentTimeMillis();
     
-    final List<SingularityTaskId> activeTaskIds = taskManager.getActiveTaskIds();
-    final List<SingularityPendingTaskId> scheduledTasks = taskManager.getScheduledTasks();
+    final ListMultimap<String, SingularityPendingTaskId> scheduledTasks = SingularityPendingTaskId.groupByRequest(taskManager.getScheduledTasks());
     final List<String> decomissioningRacks = rackManager.getDecomissioning();
     final List<SingularitySlave> decomissioningSlaves = slaveManager.getDecomissioningObjects();
     
-    scheduleTasks(scheduledTasks, activeTaskIds, decomissioningRacks, decomissioningSlaves, request, PendingType.REGULAR);
+    final List<SingularityPendingTaskId> toDelete = Lists.newArrayList();
+    final List<SingularityPendingTaskId> toCreate = Lists.newArrayList();
+    
+    for (String requestId : requestIds) {
+      Optional<SingularityRequest> maybeRequest = requestManager.fetchRequest(requestId);
+      
+      if (!maybeRequest.isPresent()) {
+        // TODO what about failures?
+        LOG.warn(String.format("Not scheduling a new task, due to no existing request for %s", requestId));
+        continue;
+      }
+      
+      diff(scheduledTasks.get(requestId), getScheduledTaskIds(decomissioningRacks, decomissioningSlaves, maybeRequest.get(), PendingType.REGULAR), toDelete, toCreate);
+    }
+    
+    taskManager.deleteScheduledTasks(toDelete);
+    taskManager.persistScheduleTasks(toCreate);
+    
+    LOG.debug(String.format("Rescheduled %s requests on completion (%s scheduled tasks removed, %s created) in %sms", requestIds.size(), toDelete.size(), toCreate.size(), System.currentTimeMillis() - start));
   }
   
-  private List<SingularityPendingTaskId> getScheduledTaskIds(List<SingularityTaskId> activeTaskIds, List<String> decomissioningRacks, List<SingularitySlave> decomissioningSlaves, SingularityRequest request, PendingType pendingType) {
+  private List<SingularityPendingTaskId> getScheduledTaskIds(List<String> decomissioningRacks, List<SingularitySlave> decomissioningSlaves, SingularityRequest request, PendingType pendingType) {
     final int numInstances = request.getInstances();
     
     final long nextRunAt = getNextRunAt(request, pendingType);
     
     int highestInstanceNo = 0;
     
-    final List<SingularityTaskId> matchingTaskIds = getMatchingActiveTaskIds(request.getId(), activeTaskIds, decomissioningRacks, decomissioningSlaves);
+    final List<SingularityTaskId> matchingTaskIds = getMatchingActiveTaskIds(request.getId(), decomissioningRacks, decomissioningSlaves);
     
     final int numMissingInstances = numInstances - matchingTaskIds.size();
     
@@ -249,18 +310,13 @@ public class SingularityScheduler extends SingularitySchedulerBase {
     if (pendingType == PendingType.IMMEDIATE) {
       LOG.info("Scheduling requested immediate run of %s", request.getId());
     } else {
-      try {
-        final Date now = new Date();
-        
-        CronExpression cronExpression = new CronExpression(request.getSchedule());
-
-        final Date nextRunAtDate = cronExpression.getNextValidTimeAfter(now);
-        nextRunAt = nextRunAtDate.getTime();
-        
-        LOG.trace(String.format("Scheduling next run of %s (schedule: %s) at %s (now: %s)", request.getId(), request.getSchedule(), nextRunAtDate, now));
-      } catch (ParseException pe) {
-        throw Throwables.propagate(pe);
-      }
+      final long now = nextRunAt;
+      
+      nextRunAt = cronScheduleCache.getNextFireTime(request, now);
+      
+      Preconditions.checkState(nextRunAt > 0, "Schedule %s of %s never fires again", request.getSchedule(), request.getId());
+      
+      LOG.trace(String.format("Scheduling next run of %s (schedule: %s) at %s (now: %s)", request.getId(), request.getSchedule(), new Date(nextRunAt), new Date(now)));
     }
     
     return nextRunAt;
@@ -1,13 +1,15 @@
 package com.hubspot.singularity.scheduler;
 
 import java.util.List;
+import java.util.Set;
 
 import com.google.common.base.Optional;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import com.google.inject.Inject;
 import com.hubspot.singularity.SingularitySlave;
-import com.hubspot.singularity.SingularityTask;
 import com.hubspot.singularity.SingularityTaskId;
+import com.hubspot.singularity.SingularityTaskSummary;
 import com.hubspot.singularity.data.TaskManager;
 
 public class SingularitySchedulerBase {
@@ -19,10 +21,10 @@ public class SingularitySchedulerBase {
     this.taskManager = taskManager;
   }
 
-  protected List<SingularityTaskId> getMatchingActiveTaskIds(String requestId, List<SingularityTaskId> activeTaskIds, List<String> decomissioningRacks, List<SingularitySlave> decomissioningSlaves) {
+  protected List<SingularityTaskId> getMatchingActiveTaskIds(String requestId, List<String> decomissioningRacks, List<SingularitySlave> decomissioningSlaves) {
     List<SingularityTaskId> matchingTaskIds = Lists.newArrayList();
     
-    for (SingularityTaskId matchingTaskId : SingularityTaskId.filter(activeTaskIds, requestId)) {
+    for (SingularityTaskId matchingTaskId : taskManager.getActiveTaskIdsForRequest(requestId)) {
       if (isOnActiveMachine(matchingTaskId, decomissioningRacks, decomissioningSlaves)) {
         matchingTaskIds.add(matchingTaskId);
       }
@@ -31,6 +33,22 @@ public class SingularitySchedulerBase {
     return matchingTaskIds;
   }  
   
+  protected Set<SingularityTaskId> getTaskIdsOnDecomissioningSlaves(List<SingularitySlave> decomissioningSlaves) {
+    Set<SingularityTaskId> taskIds = Sets.newHashSet();
+    
+    for (SingularitySlave decomissioningSlave : decomissioningSlaves) {
+      for (SingularityTaskId activeTaskId : taskManager.getActiveTaskIdsOnHost(decomissioningSlave.getHost())) {
+        Optional<SingularityTaskSummary> summary = taskManager.getActiveTaskSummary(activeTaskId.getId());
+        
+        if (!summary.isPresent() || summary.get().getSlaveId().equals(decomissioningSlave.getId())) {
+          taskIds.add(activeTaskId);
+        }
+      }
+    }
+    
+    return taskIds;
+  }
+  
   private boolean isOnActiveMachine(SingularityTaskId matchingTaskId, List<String> decomissioningRacks, List<SingularitySlave> decomissioningSlaves) {
     if (decomissioningRacks.contains(matchingTaskId.getRackId())) {
       return false;
@@ -38,13 +56,13 @@ public class SingularitySchedulerBase {
     
     for (SingularitySlave decomissioningSlave : decomissioningSlaves) {
       if (matchingTaskId.getHost().equals(decomissioningSlave.getHost())) {
-        Optional<SingularityTask> task = taskManager.getActiveTask(matchingTaskId.getId());
+        Optional<SingularityTaskSummary> summary = taskManager.getActiveTaskSummary(matchingTaskId.getId());
         
-        if (!task.isPresent()) {
+        if (!summary.isPresent()) {
           return false;
         }
         
-        if (task.get().getMesosTask().getSlaveId().getValue().equals(decomissioningSlave.getId())) {
+        if (summary.get().getSlaveId().equals(decomissioningSlave.getId())) {
           return false;
         }
       }
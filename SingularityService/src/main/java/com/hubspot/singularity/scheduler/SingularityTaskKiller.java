@@ -0,0 +1,122 @@
+package com.hubspot.singularity.scheduler;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import com.hubspot.singularity.SingularityDriverManager;
+import com.hubspot.singularity.config.SingularityConfiguration;
+import com.hubspot.singularity.data.TaskManager;
+
+/**
+ * Issues task kills to the driver from a single thread at no more than maxTaskKillsPerSecond, so that killing a large request neither floods the master
+ * nor holds up whoever asked for the kills. A task is only queued once, and its cleanup node is removed once its kill has been issued.
+ */
+public class SingularityTaskKiller {
+
+  private final static Logger LOG = LoggerFactory.getLogger(SingularityTaskKiller.class);
+
+  private final SingularityDriverManager driverManager;
+  private final TaskManager taskManager;
+  private final RateLimiter rateLimiter;
+  private final Set<String> queued;
+  private final ExecutorService executorService;
+
+  private final Meter kills;
+
+  @Inject
+  public SingularityTaskKiller(SingularityDriverManager driverManager, TaskManager taskManager, SingularityConfiguration configuration, MetricRegistry metrics) {
+    this.driverManager = driverManager;
+    this.taskManager = taskManager;
+    this.rateLimiter = RateLimiter.create(configuration.getMaxTaskKillsPerSecond());
+    this.queued = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    this.executorService = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setDaemon(true).setNameFormat("SingularityTaskKiller-%d").build());
+
+    this.kills = metrics.meter(MetricRegistry.name(SingularityTaskKiller.class, "kills"));
+
+    metrics.register(MetricRegistry.name(SingularityTaskKiller.class, "queued"), new Gauge<Integer>() {
+
+      @Override
+      public Integer getValue() {
+        return queued.size();
+      }
+
+    });
+  }
+
+  /**
+   * Returns false if a kill for this task is already queued.
+   */
+  public boolean kill(final String taskId) {
+    if (!queued.add(taskId)) {
+      return false;
+    }
+
+    executorService.execute(new Runnable() {
+
+      @Override
+      public void run() {
+        issueKill(taskId);
+      }
+
+    });
+
+    return true;
+  }
+
+  public boolean isQueued(String taskId) {
+    return queued.contains(taskId);
+  }
+
+  public int getNumQueued() {
+    return queued.size();
+  }
+
+  /**
+   * Drops every queued kill that hasn't been issued yet. Their cleanup nodes are left in place for whoever leads next.
+   */
+  public void clear() {
+    if (!queued.isEmpty()) {
+      LOG.info(String.format("Dropping %s queued task kill(s)", queued.size()));
+    }
+
+    queued.clear();
+  }
+
+  public void stop() {
+    clear();
+
+    executorService.shutdownNow();
+  }
+
+  private void issueKill(String taskId) {
+    if (!queued.contains(taskId)) {
+      return;
+    }
+
+    rateLimiter.acquire();
+
+    try {
+      driverManager.kill(taskId);
+      kills.mark();
+
+      taskManager.deleteCleanupTask(taskId);
+    } catch (Throwable t) {
+      LOG.warn(String.format("Couldn't kill task %s", taskId), t);
+    } finally {
+      queued.remove(taskId);
+    }
+  }
+
+}